@@ -76,6 +76,16 @@ public class SettingsDialogFragment extends BottomSheetDialogFragment {
                 }
         );
 
+        SwitchMaterial enablePackStorage = dialog.findViewById(R.id.enable_pack_storage);
+        Objects.requireNonNull(enablePackStorage);
+        enablePackStorage.setChecked(IPFS.isPackStorageEnabled(mContext));
+        enablePackStorage.setOnCheckedChangeListener((buttonView, isChecked) -> {
+                    IPFS.setPackStorageEnabled(mContext, isChecked);
+                    EVENTS.getInstance(mContext).exit(
+                            getString(R.string.restart_config_changed));
+                }
+        );
+
 
         TextView concurrency_text = dialog.findViewById(R.id.concurrency_text);
         Objects.requireNonNull(concurrency_text);
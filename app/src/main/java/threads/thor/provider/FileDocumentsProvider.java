@@ -269,6 +269,7 @@ public class FileDocumentsProvider extends DocumentsProvider {
                             @Override
                             public void onRelease() {
                                 release.set(true);
+                                reader.close();
                             }
                         }, handler);
 
@@ -165,7 +165,24 @@ public class DownloadContentWorker extends Worker {
 
     private void downloadContent(@NonNull DocumentFile doc, @NonNull Cid root,
                                  @NonNull String mimeType, @NonNull String name) throws ClosedException {
-        downloadLinks(doc, root, mimeType, name);
+        // the whole dag is fetched in bulk while the files are written, the
+        // writing gets the fetched blocks from the local store (only when peers
+        // serve the dagsync protocol)
+        AtomicBoolean done = new AtomicBoolean(false);
+        if (IPFS.DAGSYNC_CLIENT_ACTIVE) {
+            getBackgroundExecutor().execute(() -> {
+                try {
+                    ipfs.fetch(root, () -> isStopped() || done.get());
+                } catch (ClosedException ignore) {
+                    // ignore
+                }
+            });
+        }
+        try {
+            downloadLinks(doc, root, mimeType, name);
+        } finally {
+            done.set(true);
+        }
     }
 
 
@@ -0,0 +1,107 @@
+package threads.lite;
+
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import bitswap.pb.MessageOuterClass;
+import threads.lite.bitswap.BitSwapMessage;
+import threads.lite.cid.Cid;
+import threads.lite.format.BasicBlock;
+import threads.lite.format.Block;
+import threads.lite.utils.DataHandler;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+
+@SuppressWarnings("SpellCheckingInspection")
+@RunWith(AndroidJUnit4.class)
+public class IpfsBitSwapMessageTest {
+
+    private Block getRandomBlock() {
+        return BasicBlock.createBlock(RandomStringUtils.randomAlphabetic(1000).getBytes());
+    }
+
+    @Test
+    public void merge_messages() {
+
+        Block block = getRandomBlock();
+        Cid want = getRandomBlock().getCid();
+        Cid cancel = getRandomBlock().getCid();
+
+        BitSwapMessage first = BitSwapMessage.New(false);
+        first.AddEntry(cancel, 1, MessageOuterClass.Message.Wantlist.WantType.Block, true);
+        first.AddHave(want);
+
+        BitSwapMessage second = BitSwapMessage.New(false);
+        second.Cancel(cancel);
+        second.AddBlock(block);
+        second.AddEntry(want, 1, MessageOuterClass.Message.Wantlist.WantType.Have, false);
+
+        BitSwapMessage merged = BitSwapMessage.New(false);
+        merged.Merge(first);
+        merged.Merge(second);
+
+        assertEquals(merged.Wantlist().size(), 2);
+        assertEquals(merged.Blocks().size(), 1);
+        assertEquals(merged.Haves().size(), 1);
+        for (BitSwapMessage.Entry entry : merged.Wantlist()) {
+            if (entry.Cid.equals(cancel)) {
+                assertTrue(entry.Cancel);
+            }
+        }
+    }
+
+    @Test
+    public void split_frames() throws Exception {
+
+        BitSwapMessage first = BitSwapMessage.New(false);
+        first.AddBlock(getRandomBlock());
+        BitSwapMessage second = BitSwapMessage.New(false);
+        second.AddBlock(getRandomBlock());
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(DataHandler.writeToken(IPFS.STREAM_PROTOCOL));
+        stream.write(DataHandler.writeToken(IPFS.BITSWAP_PROTOCOL));
+        stream.write(DataHandler.encode(first.ToProtoV1()));
+        stream.write(DataHandler.encode(second.ToProtoV1()));
+        byte[] data = stream.toByteArray();
+
+        // the second message is split into two reads
+        int split = data.length - 100;
+        DataHandler reader = new DataHandler(IPFS.MESSAGE_SIZE_MAX);
+        reader.load(Arrays.copyOfRange(data, 0, split));
+        List<byte[]> messages = reader.takeMessages();
+        assertEquals(messages.size(), 1);
+        assertEquals(reader.getTokens().size(), 2);
+
+        reader.load(Arrays.copyOfRange(data, split, data.length));
+        assertTrue(reader.isDone());
+        messages = reader.takeMessages();
+        assertEquals(messages.size(), 1);
+        assertEquals(BitSwapMessage.fromData(messages.get(0)).Blocks().get(0).getCid(),
+                second.Blocks().get(0).getCid());
+    }
+
+    @Test
+    public void verify_payloads() throws Exception {
+
+        Block block = getRandomBlock();
+        BitSwapMessage message = BitSwapMessage.New(false);
+        message.AddBlock(block);
+
+        BitSwapMessage received = BitSwapMessage.fromData(message.ToProtoV1().toByteArray());
+        List<BitSwapMessage.Payload> payloads = received.TakePayloads();
+        assertEquals(payloads.size(), 1);
+        assertTrue(received.Blocks().isEmpty());
+        assertEquals(payloads.get(0).verify().getCid(), block.getCid());
+    }
+}
@@ -0,0 +1,64 @@
+package threads.lite;
+
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import threads.lite.data.BLOCKS;
+import threads.lite.format.BlockStore;
+import threads.lite.format.Node;
+import threads.lite.format.ProtoNode;
+import threads.lite.format.RawNode;
+import threads.lite.utils.CachingBlockStore;
+
+import static junit.framework.TestCase.assertEquals;
+
+
+@RunWith(AndroidJUnit4.class)
+public class IpfsCachingBlockStoreTest {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void setup() {
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void nodes_with_links_are_cached() {
+
+        CachingBlockStore cache = new CachingBlockStore(
+                BlockStore.createBlockStore(BLOCKS.getInstance(context)), 1 << 20);
+
+        Node leaf = RawNode.NewRawNode(RandomStringUtils.randomAlphabetic(1000).getBytes());
+
+        // a node of this repo is encoded with its data (field 1) before its links
+        ProtoNode node = new ProtoNode(new byte[]{0x08, 0x01}); // unixfs directory
+        node.addNodeLink("leaf", leaf);
+        byte[] raw = node.getRawData();
+        assertEquals(raw[0], 0x0a);
+
+        // leaves are only cached when they are read
+        cache.putBlock(leaf);
+        assertEquals(cache.getCachedBytes(), 0);
+
+        cache.putBlock(node);
+        assertEquals(cache.getCachedBytes(), raw.length);
+
+        // a node without links is a leaf
+        ProtoNode empty = new ProtoNode(new byte[]{0x08, 0x01});
+        cache.putBlock(empty);
+        assertEquals(cache.getCachedBytes(), raw.length);
+
+        cache.deleteBlock(node.getCid());
+        cache.deleteBlock(leaf.getCid());
+        cache.deleteBlock(empty.getCid());
+    }
+}
@@ -0,0 +1,133 @@
+package threads.lite;
+
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import threads.lite.cid.Cid;
+import threads.lite.dagsync.Selector;
+import threads.lite.dagsync.Traversal;
+import threads.lite.format.Block;
+import threads.lite.format.Node;
+import threads.lite.format.ProtoNode;
+import threads.lite.format.RawNode;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNull;
+
+
+@RunWith(AndroidJUnit4.class)
+public class IpfsDagSyncTest {
+
+    private static final byte[] DIRECTORY = {0x08, 0x01}; // unixfs data of a directory
+
+    @NonNull
+    private static Node leaf() {
+        return RawNode.NewRawNode(RandomStringUtils.randomAlphabetic(1000).getBytes());
+    }
+
+    // visits the remaining blocks of the traversal in order
+    @NonNull
+    private static List<Cid> visit(@NonNull Traversal traversal, @NonNull Map<Cid, Block> blocks) {
+        List<Cid> visited = new ArrayList<>();
+        Cid cid;
+        while ((cid = traversal.next()) != null) {
+            Block block = blocks.get(cid);
+            assertNotNull(block);
+            traversal.visit(block);
+            visited.add(cid);
+        }
+        return visited;
+    }
+
+    @Test
+    public void selector_and_traversal() {
+
+        // a raw block has no links
+        Block block = RawNode.NewRawNode(RandomStringUtils.randomAlphabetic(1000).getBytes());
+
+        Selector selector = Selector.fromBytes(new Selector(block.getCid(), 2, 10).toBytes());
+        assertEquals(selector.getRoot(), block.getCid());
+        assertEquals(selector.getDepth(), 2);
+        assertEquals(selector.getSkip(), 10);
+
+        Traversal traversal = new Traversal(block.getCid(), 0);
+        assertEquals(traversal.next(), block.getCid());
+        traversal.visit(block);
+        assertEquals(traversal.getCount(), 1);
+        assertNull(traversal.next());
+    }
+
+    @Test
+    public void multi_level_traversal_and_resume() {
+
+        // root -> (a, b), a -> (l1, l2), b -> (l1, l3), l1 is linked twice
+        Node l1 = leaf();
+        Node l2 = leaf();
+        Node l3 = leaf();
+
+        ProtoNode a = new ProtoNode(DIRECTORY);
+        a.addNodeLink("1", l1);
+        a.addNodeLink("2", l2);
+        ProtoNode b = new ProtoNode(DIRECTORY);
+        b.addNodeLink("1", l1);
+        b.addNodeLink("3", l3);
+        ProtoNode root = new ProtoNode(DIRECTORY);
+        root.addNodeLink("a", a);
+        root.addNodeLink("b", b);
+
+        Map<Cid, Block> blocks = new HashMap<>();
+        for (Block block : Arrays.asList(l1, l2, l3, a, b, root)) {
+            blocks.put(block.getCid(), block);
+        }
+
+        // depth first, links in order, a block linked twice is visited once
+        List<Cid> order = Arrays.asList(root.getCid(), a.getCid(), l1.getCid(),
+                l2.getCid(), b.getCid(), l3.getCid());
+        assertEquals(visit(new Traversal(root.getCid(), 0), blocks), order);
+
+        // a depth of 1 stops below the children of the root
+        assertEquals(visit(new Traversal(root.getCid(), 1), blocks),
+                Arrays.asList(root.getCid(), a.getCid(), b.getCid()));
+
+        // a fetch which stopped after 3 blocks is resumed with skip = count, the
+        // sender skips the same blocks and sends exactly the missing ones
+        Traversal receiver = new Traversal(root.getCid(), 0);
+        for (int i = 0; i < 3; i++) {
+            Cid cid = receiver.next();
+            assertNotNull(cid);
+            receiver.visit(blocks.get(cid));
+        }
+        Selector selector = Selector.fromBytes(new Selector(receiver.getRoot(),
+                receiver.getDepth(), receiver.getCount()).toBytes());
+
+        Traversal sender = new Traversal(selector.getRoot(), selector.getDepth());
+        List<Cid> sent = new ArrayList<>();
+        Cid cid;
+        while ((cid = sender.next()) != null) {
+            sender.visit(blocks.get(cid));
+            if (sender.getCount() > selector.getSkip()) {
+                sent.add(cid);
+            }
+        }
+        assertEquals(sent, order.subList(3, order.size()));
+
+        for (Cid next : sent) {
+            assertEquals(receiver.next(), next);
+            receiver.visit(blocks.get(next));
+        }
+        assertNull(receiver.next());
+        assertEquals(receiver.getCount(), order.size());
+    }
+}
@@ -0,0 +1,65 @@
+package threads.lite;
+
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import threads.lite.core.TimeoutCloseable;
+import threads.lite.dht.DhtExecutor;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+
+@RunWith(AndroidJUnit4.class)
+public class IpfsDhtExecutorTest {
+
+    @Test
+    public void group_limit_and_cancel() throws Exception {
+
+        DhtExecutor executor = DhtExecutor.getInstance();
+
+        AtomicInteger running = new AtomicInteger(0);
+        AtomicInteger max = new AtomicInteger(0);
+        AtomicInteger finished = new AtomicInteger(0);
+
+        DhtExecutor.Group group = executor.group(2);
+        for (int i = 0; i < 6; i++) {
+            group.execute(() -> {
+                max.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignore) {
+                    // ignore
+                }
+                running.decrementAndGet();
+                finished.incrementAndGet();
+            });
+        }
+        group.await(new TimeoutCloseable(10));
+        group.cancel();
+        assertEquals(finished.get(), 6);
+        assertTrue(max.get() <= 2);
+
+
+        // a cancelled group interrupts its running requests
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+        group = executor.group(1);
+        group.execute(() -> {
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException ignore) {
+                interrupted.set(true);
+            }
+        });
+        Thread.sleep(100);
+        group.cancel();
+        Thread.sleep(100);
+        assertTrue(interrupted.get());
+    }
+}
@@ -0,0 +1,104 @@
+package threads.lite;
+
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+
+import threads.lite.cid.Cid;
+import threads.lite.core.TimeoutCloseable;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertTrue;
+
+@SuppressWarnings("SpellCheckingInspection")
+@RunWith(AndroidJUnit4.class)
+public class IpfsGarbageCollectorTest {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void setup() {
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void gc_unpinned() throws Exception {
+
+        IPFS ipfs = TestEnv.getTestInstance(context);
+
+        String pinned = "Pinned text content";
+        Cid keep = ipfs.storeText(pinned);
+        assertNotNull(keep);
+        ipfs.pin(keep, true);
+        assertTrue(ipfs.isPinned(keep));
+
+        // stored content is pinned until it is unpinned
+        Cid remove = ipfs.storeText("Unpinned text content");
+        assertNotNull(remove);
+        assertTrue(ipfs.isPinned(remove));
+        ipfs.unpin(remove);
+        assertFalse(ipfs.isPinned(remove));
+
+        int removed = ipfs.gc(() -> false);
+        assertTrue(removed > 0);
+
+        assertEquals(ipfs.getText(keep, new TimeoutCloseable(10)), pinned);
+
+        assertTrue(ipfs.isLocal(keep));
+        assertFalse(ipfs.isLocal(remove));
+    }
+
+    @Test
+    public void gc_recursive() throws Exception {
+
+        IPFS ipfs = TestEnv.getTestInstance(context);
+
+        byte[] data = RandomStringUtils.randomAlphabetic(10 * IPFS.CHUNK_SIZE).getBytes();
+        Cid cid = ipfs.storeInputStream(new ByteArrayInputStream(data));
+        assertNotNull(cid);
+        ipfs.pin(cid, true);
+
+        ipfs.gc(() -> false);
+
+        byte[] content = ipfs.getData(cid, new TimeoutCloseable(10));
+        assertNotNull(content);
+        assertEquals(content.length, data.length);
+
+        ipfs.unpin(cid);
+        assertFalse(ipfs.isPinned(cid));
+        assertTrue(ipfs.gc(() -> false) > 0);
+    }
+
+    @Test
+    public void gc_directories() throws Exception {
+
+        IPFS ipfs = TestEnv.getTestInstance(context);
+
+        Cid text = ipfs.storeText("Directory text content");
+        Cid dir = ipfs.createEmptyDir();
+        assertNotNull(dir);
+        Cid next = ipfs.addLinkToDir(dir, "text", text);
+        assertNotNull(next);
+        assertTrue(ipfs.isPinned(next));
+
+        // the text is only reachable from the directory
+        ipfs.unpin(text);
+        ipfs.unpin(dir);
+
+        ipfs.gc(() -> false);
+
+        assertTrue(ipfs.isLocal(next));
+        assertTrue(ipfs.isLocal(text));
+    }
+}
@@ -0,0 +1,95 @@
+package threads.lite;
+
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import threads.lite.data.PACKS;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+@SuppressWarnings("SpellCheckingInspection")
+@RunWith(AndroidJUnit4.class)
+public class IpfsPackStorageTest {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void setup() {
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    private byte[] getRandomBytes(int number) {
+        return RandomStringUtils.randomAlphabetic(number).getBytes();
+    }
+
+    @Test
+    public void insert_get_delete() {
+
+        PACKS packs = PACKS.getInstance(context);
+        packs.clear();
+
+        byte[] data = getRandomBytes(IPFS.CHUNK_SIZE);
+        byte[] id = RandomStringUtils.randomAlphabetic(20).getBytes();
+
+        assertFalse(packs.hasBlock(id));
+        packs.insertBlock(id, data);
+        assertTrue(packs.hasBlock(id));
+        assertEquals(packs.sizeBlock(id), data.length);
+        assertTrue(Arrays.equals(packs.getData(id), data));
+
+        ByteBuffer buffer = packs.getBuffer(id);
+        assertNotNull(buffer);
+        assertEquals(buffer.remaining(), data.length);
+
+        packs.deleteBlock(id);
+        assertFalse(packs.hasBlock(id));
+        assertNull(packs.getData(id));
+
+        packs.insertBlock(id, data);
+        assertTrue(Arrays.equals(packs.getData(id), data));
+
+        packs.clear();
+        assertFalse(packs.hasBlock(id));
+    }
+
+    @Test
+    public void compact() {
+
+        PACKS packs = PACKS.getInstance(context);
+        packs.clear();
+
+        byte[] live = RandomStringUtils.randomAlphabetic(20).getBytes();
+        byte[] data = getRandomBytes(1000);
+        packs.insertBlock(live, data);
+
+        // enough data to fill more then one segment
+        for (int i = 0; i < 300; i++) {
+            byte[] id = RandomStringUtils.randomAlphabetic(20).getBytes();
+            packs.insertBlock(id, getRandomBytes(IPFS.CHUNK_SIZE));
+            packs.deleteBlock(id);
+        }
+
+        packs.compact();
+
+        assertTrue(packs.hasBlock(live));
+        assertTrue(Arrays.equals(packs.getData(live), data));
+        assertEquals(packs.getTotalSize(), data.length);
+
+        packs.clear();
+    }
+}
@@ -0,0 +1,69 @@
+package threads.lite;
+
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import threads.lite.cid.Multiaddr;
+import threads.lite.cid.PeerId;
+import threads.lite.data.PEERS;
+import threads.lite.host.AddrInfo;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+
+@RunWith(AndroidJUnit4.class)
+public class IpfsPeerStoreTest {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void setup() {
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void store_and_seed() {
+
+        PEERS peers = PEERS.getInstance(context);
+        peers.clear();
+
+        PeerId slow = PeerId.fromBase58("QmaCpDMGvV2BGHeYERUEnRQAwe3N8SzbUtfsmvsqQLuvuJ");
+        slow.setLatency(500);
+        PeerId fast = PeerId.fromBase58("QmW9m57aiBDHAkKj9nmFSEn7ZqrcF1fZS4bipsTCHburei");
+        fast.setLatency(50);
+
+        Multiaddr address = new Multiaddr("/ip4/147.75.195.153/udp/4001/quic");
+        peers.storePeers(Arrays.asList(
+                AddrInfo.create(slow, address, false),
+                AddrInfo.create(fast, address, false)));
+
+        // the fastest peers first, with their addresses and latencies
+        List<AddrInfo> stored = peers.getPeers(10);
+        assertEquals(stored.size(), 2);
+        assertEquals(stored.get(0).getPeerId(), fast);
+        assertEquals(stored.get(0).getPeerId().getLatency(), 50);
+        assertTrue(stored.get(0).asSet().contains(address));
+
+        assertEquals(peers.getPeers(1).size(), 1);
+
+        // a store replaces the peers of the previous store
+        peers.storePeers(Collections.singletonList(AddrInfo.create(slow, address, false)));
+        stored = peers.getPeers(10);
+        assertEquals(stored.size(), 1);
+        assertEquals(stored.get(0).getPeerId(), slow);
+
+        peers.clear();
+    }
+}
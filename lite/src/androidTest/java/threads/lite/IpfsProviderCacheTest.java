@@ -0,0 +1,90 @@
+package threads.lite;
+
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.List;
+
+import threads.lite.cid.PeerId;
+import threads.lite.dht.ProviderCache;
+import threads.lite.host.AddrInfo;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+
+@RunWith(AndroidJUnit4.class)
+public class IpfsProviderCacheTest {
+
+    @Test
+    public void cache_and_negative() throws Exception {
+
+        ProviderCache cache = new ProviderCache(10, 1000, 200, 0);
+
+        byte[] found = "found".getBytes();
+        byte[] missing = "missing".getBytes();
+
+        assertNull(cache.getProviders(found));
+
+        PeerId peerId = PeerId.fromBase58("QmaCpDMGvV2BGHeYERUEnRQAwe3N8SzbUtfsmvsqQLuvuJ");
+        cache.add(found, AddrInfo.create(peerId, Collections.emptyList(), false));
+        cache.finished(found, true);
+
+        List<AddrInfo> providers = cache.getProviders(found);
+        assertNotNull(providers);
+        assertEquals(providers.size(), 1);
+        assertEquals(providers.get(0).getPeerId(), peerId);
+
+        // only one refresh at once
+        assertTrue(cache.refresh(found));
+        assertFalse(cache.refresh(found));
+
+        // a closed lookup is no negative entry
+        cache.finished(missing, false);
+        assertNull(cache.getProviders(missing));
+
+        cache.finished(missing, true);
+        providers = cache.getProviders(missing);
+        assertNotNull(providers);
+        assertTrue(providers.isEmpty());
+
+        Thread.sleep(300);
+        assertNull(cache.getProviders(missing));
+    }
+
+    @Test
+    public void remove_failed_providers() {
+
+        ProviderCache cache = new ProviderCache(10, 60000, 60000, 60000);
+
+        byte[] first = "first".getBytes();
+        byte[] second = "second".getBytes();
+
+        PeerId a = PeerId.fromBase58("QmaCpDMGvV2BGHeYERUEnRQAwe3N8SzbUtfsmvsqQLuvuJ");
+        PeerId b = PeerId.fromBase58("QmW9m57aiBDHAkKj9nmFSEn7ZqrcF1fZS4bipsTCHburei");
+        cache.add(first, AddrInfo.create(a, Collections.emptyList(), false));
+        cache.add(first, AddrInfo.create(b, Collections.emptyList(), false));
+        cache.add(second, AddrInfo.create(a, Collections.emptyList(), false));
+        cache.finished(first, true);
+        cache.finished(second, true);
+
+        // a provider which does not have the content
+        cache.remove(first, b);
+        List<AddrInfo> providers = cache.getProviders(first);
+        assertNotNull(providers);
+        assertEquals(providers.size(), 1);
+        assertEquals(providers.get(0).getPeerId(), a);
+
+        // a provider which can not be connected, without providers a lookup is required
+        cache.remove(a);
+        assertNull(cache.getProviders(first));
+        assertNull(cache.getProviders(second));
+    }
+}
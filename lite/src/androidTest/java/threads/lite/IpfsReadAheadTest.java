@@ -0,0 +1,48 @@
+package threads.lite;
+
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import threads.lite.dag.ReadAhead;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+
+@RunWith(AndroidJUnit4.class)
+public class IpfsReadAheadTest {
+
+    @Test
+    public void grow_and_shrink() {
+
+        ReadAhead readAhead = new ReadAhead(4, 64, 20);
+        assertEquals(readAhead.getWindow(), 4);
+
+        // the reader waits for every block
+        long position = 0;
+        for (int i = 0; i < 4; i++) {
+            assertTrue(readAhead.seek(position, IPFS.CHUNK_SIZE));
+            readAhead.read(IPFS.CHUNK_SIZE, 100);
+            position += IPFS.CHUNK_SIZE;
+        }
+        assertTrue(readAhead.getWindow() > 4);
+        int window = readAhead.getWindow();
+
+        // the reader never waits, the window stays
+        for (int i = 0; i < window; i++) {
+            readAhead.read(IPFS.CHUNK_SIZE, 0);
+            position += IPFS.CHUNK_SIZE;
+        }
+        assertEquals(readAhead.getWindow(), window);
+
+        // random access
+        assertFalse(readAhead.seek(position * 4, IPFS.CHUNK_SIZE));
+        assertEquals(readAhead.getWindow(), Math.max(4, window / 2));
+        assertFalse(readAhead.seek(0, IPFS.CHUNK_SIZE));
+        assertEquals(readAhead.getWindow(), 4);
+    }
+}
@@ -0,0 +1,36 @@
+package threads.lite;
+
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import threads.lite.core.TimeoutCloseable;
+import threads.lite.utils.TokenBucket;
+
+import static junit.framework.TestCase.assertTrue;
+
+
+@RunWith(AndroidJUnit4.class)
+public class IpfsTokenBucketTest {
+
+    @Test
+    public void limit_rate() throws Exception {
+
+        TokenBucket bucket = new TokenBucket(1000); // 1000 bytes per second
+
+        long start = System.currentTimeMillis();
+        bucket.acquire(new TimeoutCloseable(10), 1000); // the burst
+        assertTrue(System.currentTimeMillis() - start < 100);
+
+        bucket.acquire(new TimeoutCloseable(10), 500);
+        assertTrue(System.currentTimeMillis() - start >= 400);
+
+        // no limit
+        bucket.setRate(0);
+        start = System.currentTimeMillis();
+        bucket.acquire(new TimeoutCloseable(10), 1000000);
+        assertTrue(System.currentTimeMillis() - start < 100);
+    }
+}
@@ -0,0 +1,52 @@
+package threads.lite;
+
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import threads.lite.cid.PeerId;
+import threads.lite.dht.Bucket;
+import threads.lite.dht.ID;
+import threads.lite.dht.PeerDistanceSorter;
+import threads.lite.dht.XorTrie;
+
+import static junit.framework.TestCase.assertEquals;
+
+
+@RunWith(AndroidJUnit4.class)
+public class IpfsXorTrieTest {
+
+    @Test
+    public void closest_peers() {
+
+        XorTrie trie = XorTrie.EMPTY;
+        List<Bucket.PeerInfo> peers = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Bucket.PeerInfo peerInfo = new Bucket.PeerInfo(PeerId.random(), true);
+            peers.add(peerInfo);
+            trie = trie.add(peerInfo);
+        }
+        // removed peers are not found anymore
+        for (int i = 0; i < 50; i++) {
+            trie = trie.remove(peers.remove(0).getID());
+        }
+        assertEquals(trie.size(), 150);
+
+        ID target = ID.convertPeerID(PeerId.random());
+
+        PeerDistanceSorter pds = new PeerDistanceSorter(target);
+        for (Bucket.PeerInfo peerInfo : peers) {
+            pds.appendPeer(peerInfo.getPeerId(), peerInfo.getID());
+        }
+        List<PeerId> sorted = pds.sortedList();
+
+        List<PeerId> closest = trie.closest(target, 20);
+        assertEquals(closest.size(), 20);
+        assertEquals(closest, sorted.subList(0, 20));
+    }
+}
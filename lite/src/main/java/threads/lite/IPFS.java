@@ -49,6 +49,8 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import identify.pb.IdentifyOuterClass;
+import threads.lite.bitswap.Ledger;
+import threads.lite.bitswap.Session;
 import threads.lite.cid.Cid;
 import threads.lite.cid.Multiaddr;
 import threads.lite.cid.PeerId;
@@ -61,6 +63,11 @@ import threads.lite.core.TimeoutCloseable;
 import threads.lite.crypto.PrivKey;
 import threads.lite.crypto.Rsa;
 import threads.lite.data.BLOCKS;
+import threads.lite.data.PACKS;
+import threads.lite.data.PEERS;
+import threads.lite.data.PINS;
+import threads.lite.data.Storage;
+import threads.lite.dht.DhtExecutor;
 import threads.lite.dht.Routing;
 import threads.lite.format.BlockStore;
 import threads.lite.format.Node;
@@ -72,6 +79,8 @@ import threads.lite.host.PeerInfo;
 import threads.lite.ipns.Ipns;
 import threads.lite.push.Push;
 import threads.lite.push.PushService;
+import threads.lite.utils.CachingBlockStore;
+import threads.lite.utils.CollectingBlockStore;
 import threads.lite.utils.Link;
 import threads.lite.utils.LinkCloseable;
 import threads.lite.utils.ProgressStream;
@@ -81,6 +90,7 @@ import threads.lite.utils.ReaderProgress;
 import threads.lite.utils.ReaderStream;
 import threads.lite.utils.Resolver;
 import threads.lite.utils.Stream;
+import threads.lite.utils.WriteBehindBlockStore;
 import threads.lite.utils.WriterStream;
 
 public class IPFS {
@@ -92,6 +102,7 @@ public class IPFS {
     public static final String PUSH_PROTOCOL = "/ipfs/push/1.0.0";
     public static final String STREAM_PROTOCOL = "/multistream/1.0.0";
     public static final String BITSWAP_PROTOCOL = "/ipfs/bitswap/1.2.0";
+    public static final String DAGSYNC_PROTOCOL = "/lite/dagsync/1.0.0";
     public static final String IDENTITY_PROTOCOL = "/ipfs/id/1.0.0";
     public static final String INDEX_HTML = "index.html";
     public static final String AGENT_PREFIX = "lite";
@@ -106,13 +117,38 @@ public class IPFS {
     public static final String APRN = "libp2p";
 
 
-    public static final int PRELOAD = 25;
-    public static final int PRELOAD_DIST = 5;
+    public static final int READ_AHEAD_MIN = 4; // blocks a reader fetches ahead at least
+    public static final int READ_AHEAD_MAX = 64; // 16 MB with the default chunk size
+    public static final long READ_AHEAD_STALL = 20; // a reader waited for the network [ms]
+    public static final int PREFETCH_WORKERS = 32; // threads which fetch ahead for all readers
+    public static final int PREFETCH_READER_WORKERS = 8; // fetches one reader runs at once
     public static final int CHUNK_SIZE = 262144;
+    public static final long BLOCK_CACHE_SIZE = 1 << 23; // 8 MB
+    public static final int GC_BATCH_SIZE = 256; // blocks removed at once by the gc
+    public static final long GC_QUOTA_INTERVAL = 60000; // 1 min between quota triggered gc
+    // received blocks are written in batches by a background writer, a block is
+    // written at the latest after WRITE_BEHIND_DELAY ms (0 writes synchronously)
+    public static final long WRITE_BEHIND_DELAY = 250;
+    public static final int WRITE_BEHIND_BATCH_SIZE = 32;
+    public static final long WRITE_BEHIND_CAPACITY = 1 << 25; // 32 MB
+    public static final int WRITE_BEHIND_RETRIES = 5; // failed writes until the store fails
+    public static final long WRITE_BEHIND_RETRY_DELAY = 100; // doubled on every failed write
+    public static final long WRITE_BEHIND_RETRY_MAX = 10000; // 10 sec
+    public static final int IMPORT_BATCH_SIZE = 32; // blocks per transaction on imports
     public static final int BLOCK_SIZE_LIMIT = 1048576; // 1 MB
     public static final long RESOLVE_MAX_TIME = 30000; // 30 sec
     public static final boolean SEND_DONT_HAVES = false;
     public static final boolean BITSWAP_ENGINE_ACTIVE = false;
+    public static final int BITSWAP_ENGINE_WORKERS = 4;
+    public static final int BITSWAP_ENGINE_SEND_TIMEOUT = 10; // 10 sec
+    public static final int BITSWAP_VERIFY_WORKERS = 4; // limited by the number of cores
+    public static final int BITSWAP_VERIFY_QUEUE = 64; // blocks waiting for a verifier
+    public static final boolean DAGSYNC_SERVER_ACTIVE = true; // served by DAGSYNC_SERVER_WORKERS
+    public static final boolean DAGSYNC_CLIENT_ACTIVE = true; // peers without it answer na
+    public static final int DAGSYNC_SERVER_WORKERS = 2;
+    public static final int DAGSYNC_SERVER_QUEUE = 16; // requests waiting for a server
+    public static final int DAGSYNC_BATCH_SIZE = 1 << 20; // 1 MB of blocks per message
+    public static final long DAGSYNC_IDLE_TIMEOUT = 10000; // 10 sec without a block
     public static final int PROTOCOL_READER_LIMIT = 1000;
     public static final int TIMEOUT_BOOTSTRAP = 10;
     public static final int MAX_STREAMS = 100;
@@ -120,6 +156,16 @@ public class IPFS {
     public static final int MIN_PEERS = 5;
     public static final int RESOLVE_TIMEOUT = 1000; // 1 sec
     public static final long WANTS_WAIT_TIMEOUT = 500; // 500 ms
+    public static final long WANTS_CLOSE_INTERVAL = 25; // closeable is checked while waiting
+    public static final int BITSWAP_SESSION_WINDOW = 32; // outstanding wants per session
+    public static final long BITSWAP_SESSION_IDLE = 300000; // 5 min
+    public static final long BITSWAP_PEER_IDLE = 300000; // the state of a quiet peer is removed
+    public static final long BITSWAP_CLEANUP_INTERVAL = 60000; // 1 min
+    public static final long BITSWAP_WANT_TIMEOUT = 3000; // want-block is sent to another peer
+    public static final int BITSWAP_EXPLORATION = 10; // every 10th want-block explores a peer
+    public static final long BITSWAP_SCORE_HALF_LIFE = 600000; // 10 min
+    public static final long BITSWAP_CANCEL_DELAY = 20; // cancels are collected and sent in batches
+    public static final int BITSWAP_SEND_WORKERS = 16; // open the streams of peers for wants
     public static final boolean EVALUATE_PEER = false;
     public static final short PRIORITY_URGENT = 1;
     public static final short PRIORITY_HIGH = 5;
@@ -131,6 +177,7 @@ public class IPFS {
     // to bunch it up into multiple read/writes when the whole message is
     // a single, large serialized object.
     public static final int MESSAGE_SIZE_MAX = 1 << 22; // 4 MB
+    public static final int BITSWAP_MERGE_SIZE = MESSAGE_SIZE_MAX - (1 << 16); // room for the protobuf framing
 
 
     @NonNull
@@ -157,6 +204,19 @@ public class IPFS {
     public static final int CONNECT_TIMEOUT = 5;
     public static final int BITSWAP_LOAD_PROVIDERS_REFRESH = 10000;
     public static final long DHT_REQUEST_READ_TIMEOUT = 5;
+    public static final int DHT_WORKERS = 16; // requests of all dht queries
+    public static final int DHT_QUEUE = 64; // requests waiting for a dht worker
+    public static final int DHT_PROVIDER_CACHE_SIZE = 256; // contents with cached providers
+    public static final long DHT_PROVIDER_TTL = 1800000; // 30 min
+    public static final long DHT_PROVIDER_NEGATIVE_TTL = 30000; // no providers found, 30 sec
+    public static final long DHT_PROVIDER_REFRESH = 60000; // cached providers are looked up again
+    public static final int DHT_PROVIDER_REFRESH_TIMEOUT = 30; // 30 sec
+    public static final int DHT_PROVIDER_REFRESHES = 2; // refreshes which run at once
+    public static final int PEER_STORE_LIMIT = 200; // stored peers which seed the routing table
+    public static final long PEER_STORE_INTERVAL = 300000; // 5 min between stores of the peers
+    public static final long CONNECTION_IDLE_TIMEOUT = 8000; // closed before the quic idle timeout (GRACE_PERIOD)
+    public static final int CONNECTION_IDLE_MAX = 50; // released connections which are kept open
+    public static final long CONNECTION_SWEEP_INTERVAL = 2000; // idle connections are closed by a sweep
     public static final long IPNS_DURATION = 6; // 6 hours duration
     public static final int THRESHOLD_FIND_PROVIDERS = 5;
     public static final boolean BITSWAP_REQUEST_ACTIVE = true;
@@ -165,6 +225,10 @@ public class IPFS {
     private static final String PRIVATE_KEY = "privateKey";
     private static final String PUBLIC_KEY = "publicKey";
     private static final String CONCURRENCY_KEY = "concurrencyKey";
+    private static final String PACK_STORAGE_KEY = "packStorageKey";
+    private static final String STORAGE_QUOTA_KEY = "storageQuotaKey";
+    private static final String UPLOAD_LIMIT_KEY = "uploadLimitKey";
+    private static final String PEER_UPLOAD_LIMIT_KEY = "peerUploadLimitKey";
     private static final String TAG = IPFS.class.getSimpleName();
     private static final String PREF_KEY = IPFS.TAG;
     private static final boolean CONNECTION_SERVICE_ENABLED = false;
@@ -196,7 +260,15 @@ public class IPFS {
     }
 
     @NonNull
-    private final BLOCKS blocks;
+    private final Storage blocks;
+    @NonNull
+    private final WriteBehindBlockStore writeBehind;
+    @NonNull
+    private final CachingBlockStore cache;
+    @NonNull
+    private final CollectingBlockStore collector;
+    @NonNull
+    private final BlockStore blockstore;
     @NonNull
     private final LiteHost host;
     @NonNull
@@ -210,7 +282,11 @@ public class IPFS {
     private IPFS(@NonNull Context context) throws Exception {
 
 
-        blocks = BLOCKS.getInstance(context);
+        if (isPackStorageEnabled(context)) {
+            blocks = PACKS.getInstance(context);
+        } else {
+            blocks = BLOCKS.getInstance(context);
+        }
 
         KeyPair keypair = getKeyPair(context);
 
@@ -230,8 +306,16 @@ public class IPFS {
         int alpha = getConcurrencyValue(context);
 
 
-        BlockStore blockstore = BlockStore.createBlockStore(blocks);
-        this.host = new LiteHost(selfSignedCertificate, privateKey, blockstore, port, alpha);
+        writeBehind = new WriteBehindBlockStore(BlockStore.createBlockStore(blocks),
+                WRITE_BEHIND_CAPACITY, WRITE_BEHIND_BATCH_SIZE, WRITE_BEHIND_DELAY);
+        cache = new CachingBlockStore(writeBehind, BLOCK_CACHE_SIZE);
+        collector = new CollectingBlockStore(cache, blocks, PINS.getInstance(context),
+                getStorageQuota(context));
+        blockstore = collector;
+        this.host = new LiteHost(selfSignedCertificate, privateKey, blockstore,
+                PEERS.getInstance(context), port, alpha);
+        this.host.getBitSwap().setUploadLimits(getUploadLimit(context),
+                getPeerUploadLimit(context));
 
 
         if (IPFS.SERVER_ACTIVE) {
@@ -266,6 +350,79 @@ public class IPFS {
         editor.apply();
     }
 
+    // the storage is selected once when the instance is created, blocks of the
+    // other storage are not migrated
+    public static boolean isPackStorageEnabled(@NonNull Context context) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        return sharedPref.getBoolean(PACK_STORAGE_KEY, false);
+    }
+
+    public static void setPackStorageEnabled(@NonNull Context context, boolean enabled) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        SharedPreferences.Editor editor = sharedPref.edit();
+        editor.putBoolean(PACK_STORAGE_KEY, enabled);
+        editor.apply();
+    }
+
+    // when the stored blocks exceed the quota (in bytes) a garbage collection is
+    // started, a quota of 0 disables the automatic collection
+    public static long getStorageQuota(@NonNull Context context) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        return sharedPref.getLong(STORAGE_QUOTA_KEY, 0);
+    }
+
+    public static void setStorageQuota(@NonNull Context context, long quota) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        SharedPreferences.Editor editor = sharedPref.edit();
+        editor.putLong(STORAGE_QUOTA_KEY, quota);
+        editor.apply();
+        if (INSTANCE != null) {
+            INSTANCE.collector.setQuota(quota);
+        }
+    }
+
+    // upload limit (bytes per second) of the served blocks for all peers together,
+    // a limit of 0 disables it
+    public static long getUploadLimit(@NonNull Context context) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        return sharedPref.getLong(UPLOAD_LIMIT_KEY, 0);
+    }
+
+    public static void setUploadLimit(@NonNull Context context, long limit) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        SharedPreferences.Editor editor = sharedPref.edit();
+        editor.putLong(UPLOAD_LIMIT_KEY, limit);
+        editor.apply();
+        if (INSTANCE != null) {
+            INSTANCE.host.getBitSwap().setUploadLimits(limit, getPeerUploadLimit(context));
+        }
+    }
+
+    // upload limit (bytes per second) of the served blocks for each peer, a limit
+    // of 0 disables it
+    public static long getPeerUploadLimit(@NonNull Context context) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        return sharedPref.getLong(PEER_UPLOAD_LIMIT_KEY, 0);
+    }
+
+    public static void setPeerUploadLimit(@NonNull Context context, long limit) {
+        Objects.requireNonNull(context);
+        SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+        SharedPreferences.Editor editor = sharedPref.edit();
+        editor.putLong(PEER_UPLOAD_LIMIT_KEY, limit);
+        editor.apply();
+        if (INSTANCE != null) {
+            INSTANCE.host.getBitSwap().setUploadLimits(getUploadLimit(context), limit);
+        }
+    }
+
     public static int getPort(@NonNull Context context) {
 
         SharedPreferences sharedPref = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
@@ -521,12 +678,38 @@ public class IPFS {
 
     public void rm(@NonNull Cid cid) {
         try {
-            Stream.removeCid(() -> false, blocks, cid);
+            collector.unpin(cid);
+            Stream.removeCid(() -> false, blockstore, cid);
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
         }
     }
 
+    // pinned blocks (and with recursive all blocks of the dag) are not removed
+    // by the garbage collection, content stored by the store methods and the
+    // directories created by the directory methods are pinned
+    public void pin(@NonNull Cid cid, boolean recursive) {
+        collector.pin(cid, recursive);
+    }
+
+    public void unpin(@NonNull Cid cid) {
+        collector.unpin(cid);
+    }
+
+    public boolean isPinned(@NonNull Cid cid) {
+        return collector.isPinned(cid);
+    }
+
+    // true when the block is stored locally
+    public boolean isLocal(@NonNull Cid cid) {
+        return blockstore.hasBlock(cid);
+    }
+
+    // removes all blocks which are not pinned, returns the number of removed blocks
+    public int gc(@NonNull Closeable closeable) throws ClosedException {
+        return collector.collect(closeable);
+    }
+
     @NonNull
     public Cid storeData(@NonNull byte[] data) throws IOException {
 
@@ -554,7 +737,14 @@ public class IPFS {
     public Cid storeInputStream(@NonNull InputStream inputStream,
                                 @NonNull Progress progress, long size) {
 
-        return Stream.write(blocks, new WriterStream(inputStream, progress, size));
+        collector.startImport();
+        try {
+            Cid cid = Stream.write(blockstore, new WriterStream(inputStream, progress, size));
+            collector.pin(cid, true);
+            return cid;
+        } finally {
+            collector.finishImport();
+        }
 
     }
 
@@ -596,30 +786,34 @@ public class IPFS {
         int remember = 0;
 
         threads.lite.utils.Reader reader = getReader(cid, progress);
-        long size = reader.getSize();
-        byte[] buf = reader.loadNextData();
-        while (buf != null && buf.length > 0) {
+        try {
+            long size = reader.getSize();
+            byte[] buf = reader.loadNextData();
+            while (buf != null && buf.length > 0) {
 
-            if (progress.isClosed()) {
-                throw new ClosedException();
-            }
+                if (progress.isClosed()) {
+                    throw new ClosedException();
+                }
 
-            // calculate progress
-            totalRead += buf.length;
-            if (progress.doProgress()) {
-                if (size > 0) {
-                    int percent = (int) ((totalRead * 100.0f) / size);
-                    if (remember < percent) {
-                        remember = percent;
-                        progress.setProgress(percent);
+                // calculate progress
+                totalRead += buf.length;
+                if (progress.doProgress()) {
+                    if (size > 0) {
+                        int percent = (int) ((totalRead * 100.0f) / size);
+                        if (remember < percent) {
+                            remember = percent;
+                            progress.setProgress(percent);
+                        }
                     }
                 }
-            }
 
-            os.write(buf, 0, buf.length);
+                os.write(buf, 0, buf.length);
 
-            buf = reader.loadNextData();
+                buf = reader.loadNextData();
 
+            }
+        } finally {
+            reader.close();
         }
     }
 
@@ -627,11 +821,15 @@ public class IPFS {
                                     @NonNull Closeable closeable) throws ClosedException, IOException {
 
         Reader reader = getReader(cid, closeable);
-        byte[] buf = reader.loadNextData();
-        while (buf != null && buf.length > 0) {
+        try {
+            byte[] buf = reader.loadNextData();
+            while (buf != null && buf.length > 0) {
 
-            os.write(buf, 0, buf.length);
-            buf = reader.loadNextData();
+                os.write(buf, 0, buf.length);
+                buf = reader.loadNextData();
+            }
+        } finally {
+            reader.close();
         }
     }
 
@@ -655,30 +853,45 @@ public class IPFS {
 
     @Nullable
     public Cid rmLinkFromDir(@NonNull Cid dir, String name) {
+        collector.startImport();
         try {
-            return Stream.removeLinkFromDir(blocks, () -> false, dir, name);
+            Cid cid = Stream.removeLinkFromDir(blockstore, () -> false, dir, name);
+            collector.pin(cid, true);
+            return cid;
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
+        } finally {
+            collector.finishImport();
         }
         return null;
     }
 
     @Nullable
     public Cid addLinkToDir(@NonNull Cid dir, @NonNull String name, @NonNull Cid link) {
+        collector.startImport();
         try {
-            return Stream.addLinkToDir(blocks, () -> false, dir, name, link);
+            Cid cid = Stream.addLinkToDir(blockstore, () -> false, dir, name, link);
+            collector.pin(cid, true);
+            return cid;
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
+        } finally {
+            collector.finishImport();
         }
         return null;
     }
 
     @Nullable
     public Cid createEmptyDir() {
+        collector.startImport();
         try {
-            return Stream.createEmptyDir(blocks);
+            Cid cid = Stream.createEmptyDir(blockstore);
+            collector.pin(cid, true);
+            return cid;
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
+        } finally {
+            collector.finishImport();
         }
         return null;
     }
@@ -706,6 +919,16 @@ public class IPFS {
     }
 
     public void shutdown() {
+        try {
+            writeBehind.shutdown();
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
+        try {
+            host.getRouting().storePeers();
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
         try {
             host.shutdown();
         } catch (Throwable throwable) {
@@ -746,7 +969,7 @@ public class IPFS {
     public Node resolveNode(@NonNull String path, @NonNull Closeable closeable) throws ClosedException {
 
         try {
-            return Resolver.resolveNode(closeable, blocks, host.getBitSwap(), path);
+            return Resolver.resolveNode(closeable, blockstore, host.getBitSwap(), path);
         } catch (ClosedException closedException) {
             throw closedException;
         } catch (Throwable ignore) {
@@ -837,7 +1060,39 @@ public class IPFS {
     }
 
     public void clearDatabase() {
+        try {
+            writeBehind.flush();
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
         blocks.clear();
+        collector.clear();
+        cache.clear();
+        host.getPeerStore().clear();
+    }
+
+    public long getBlockCacheHits() {
+        return cache.getHits();
+    }
+
+    public long getBlockCacheMisses() {
+        return cache.getMisses();
+    }
+
+    // bytes and blocks exchanged with each peer
+    @NonNull
+    public Ledger getLedger() {
+        return host.getBitSwap().getLedger();
+    }
+
+    // dht requests which wait for a worker
+    public int getDhtQueueDepth() {
+        return DhtExecutor.getInstance().getQueueDepth();
+    }
+
+    // dht queries (lookups, puts and provides) which are running
+    public int getDhtActiveQueries() {
+        return DhtExecutor.getInstance().getActiveQueries();
     }
 
 
@@ -875,7 +1130,7 @@ public class IPFS {
     public Cid resolve(@NonNull String path, @NonNull Closeable closeable) throws ClosedException {
 
         try {
-            Node node = Resolver.resolveNode(closeable, blocks, host.getBitSwap(), path);
+            Node node = Resolver.resolveNode(closeable, blockstore, host.getBitSwap(), path);
             if (node != null) {
                 return node.getCid();
             }
@@ -897,8 +1152,7 @@ public class IPFS {
 
         boolean result;
         try {
-            BlockStore blockstore = BlockStore.createBlockStore(blocks);
-            result = Stream.isDir(closeable, blockstore, host.getBitSwap(), cid);
+            result = Stream.isDir(closeable, blockstore, host.getBitSwap().getSession(cid), cid);
         } catch (ClosedException closedException) {
             throw closedException;
         } catch (Throwable e) {
@@ -961,7 +1215,6 @@ public class IPFS {
 
         List<Link> infoList = new ArrayList<>();
         try {
-            BlockStore blockstore = BlockStore.createBlockStore(blocks);
             Stream.ls(new LinkCloseable() {
 
                 @Override
@@ -973,7 +1226,7 @@ public class IPFS {
                 public void info(@NonNull Link link) {
                     infoList.add(link);
                 }
-            }, blockstore, host.getBitSwap(), cid, resolveChildren);
+            }, blockstore, host.getBitSwap().getSession(cid), cid, resolveChildren);
 
         } catch (ClosedException closedException) {
             throw closedException;
@@ -983,10 +1236,30 @@ public class IPFS {
         return infoList;
     }
 
+    // fetches the whole dag below the cid with dagsync from the peers which have the
+    // root block, the blocks are stored while they arrive (readers of the dag get
+    // them right away), blocks which could not be fetched are requested with
+    // bitswap when read. Returns true when all blocks were fetched (always false
+    // while the dagsync client is not active).
+    public boolean fetch(@NonNull Cid cid, @NonNull Closeable closeable) throws ClosedException {
+        if (!DAGSYNC_CLIENT_ACTIVE) {
+            return false;
+        }
+        try {
+            Session session = host.getBitSwap().getSession(cid);
+            session.getBlock(closeable, cid, true);
+            return host.getDagSync().fetch(closeable, cid, 0, session.getPeers());
+        } catch (ClosedException closedException) {
+            throw closedException;
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+            return false;
+        }
+    }
+
     @NonNull
     public Reader getReader(@NonNull Cid cid, @NonNull Closeable closeable) throws ClosedException {
-        BlockStore blockstore = BlockStore.createBlockStore(blocks);
-        return Reader.getReader(closeable, blockstore, host.getBitSwap(), cid);
+        return Reader.getReader(closeable, blockstore, host.getBitSwap().getSession(cid), cid);
     }
 
     private void getToOutputStream(@NonNull OutputStream outputStream, @NonNull Cid cid,
@@ -1008,6 +1281,8 @@ public class IPFS {
 
     @NonNull
     public InputStream getLoaderStream(@NonNull Cid cid, @NonNull Progress progress) throws ClosedException {
+        // a download pulls the blocks from all peers which have them
+        host.getBitSwap().getSession(cid).setStriped(true);
         Reader loader = getReader(cid, progress);
         return new ProgressStream(loader, progress);
 
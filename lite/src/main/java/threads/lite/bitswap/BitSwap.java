@@ -3,13 +3,15 @@ package threads.lite.bitswap;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import net.luminis.quic.QuicClientConnection;
-import net.luminis.quic.stream.QuicStream;
-
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import threads.lite.IPFS;
 import threads.lite.LogUtils;
@@ -23,7 +25,7 @@ import threads.lite.core.TimeoutIssue;
 import threads.lite.format.Block;
 import threads.lite.format.BlockStore;
 import threads.lite.host.LiteHost;
-import threads.lite.utils.DataHandler;
+import threads.lite.utils.TokenBucket;
 
 
 public class BitSwap implements Interface {
@@ -36,28 +38,111 @@ public class BitSwap implements Interface {
     private final BitSwapEngine engine;
     @NonNull
     private final LiteHost host;
+    @NonNull
+    private final BlockVerifier verifier;
+    private final ConcurrentHashMap<PeerId, MessageQueue> queues = new ConcurrentHashMap<>();
+    private final Ledger ledger = new Ledger();
+    private final TokenBucket upload = new TokenBucket(0);
+    private final ConcurrentHashMap<PeerId, TokenBucket> uploads = new ConcurrentHashMap<>();
+    private volatile long peerUploadRate = 0;
+    private final ExecutorService writers = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor();
 
     public BitSwap(@NonNull BlockStore blockstore, @NonNull LiteHost host) {
         this.host = host;
         contentManager = new ContentManager(this, blockstore, host);
+        verifier = new BlockVerifier(contentManager);
         engine = new BitSwapEngine(this, blockstore, host.self());
+        cleaner.scheduleWithFixedDelay(this::cleanup, IPFS.BITSWAP_CLEANUP_INTERVAL,
+                IPFS.BITSWAP_CLEANUP_INTERVAL, TimeUnit.MILLISECONDS);
     }
 
 
     @Nullable
     @Override
     public Block getBlock(@NonNull Closeable closeable, @NonNull Cid cid, boolean root) throws ClosedException {
-        return contentManager.getBlock(closeable, cid, root);
+        return contentManager.getSession().getBlock(closeable, cid, root);
     }
 
     @Override
     public void preload(@NonNull Closeable closeable, @NonNull List<Cid> cids) {
-        contentManager.loadBlocks(closeable, cids);
+        contentManager.getSession().preload(closeable, cids);
+    }
+
+    @Override
+    public void purge() {
+        contentManager.getSession().purge();
+    }
+
+    // the session of the dag with the given root, blocks of the dag are requested
+    // from the peers which delivered other blocks of it
+    @NonNull
+    public Session getSession(@NonNull Cid root) {
+        return contentManager.getSession(root);
+    }
+
+    @NonNull
+    public PeerScores getScores() {
+        return contentManager.getScores();
+    }
+
+    // a block which was received (and verified) by another protocol, it is stored
+    // and handed to the waiting requests
+    public void blockReceived(@NonNull PeerId peer, @NonNull Block block) {
+        contentManager.blockReceived(peer, block);
+    }
+
+    @NonNull
+    public Ledger getLedger() {
+        return ledger;
+    }
+
+    // upload limits (bytes per second) of the blocks which are served, for all peers
+    // and for each peer, 0 disables a limit
+    public void setUploadLimits(long rate, long peerRate) {
+        upload.setRate(rate);
+        peerUploadRate = peerRate;
+        for (TokenBucket bucket : uploads.values()) {
+            bucket.setRate(peerRate);
+        }
+    }
+
+    // takes the tokens for blocks of the given size which are sent to the peer,
+    // returns the time (ms) to wait when the peer or the upload limit is reached.
+    // The peer limit is taken first, so a limited peer does not hold tokens of
+    // the others
+    long takeUpload(@NonNull PeerId peer, int bytes) {
+        long rate = peerUploadRate;
+        TokenBucket bucket = null;
+        if (rate > 0) {
+            bucket = uploads.computeIfAbsent(peer, key -> new TokenBucket(rate));
+            long wait = bucket.take(bytes);
+            if (wait > 0) {
+                return wait;
+            }
+        }
+        long wait = upload.take(bytes);
+        if (wait > 0 && bucket != null) {
+            bucket.refund(bytes);
+        }
+        return wait;
+    }
+
+    // bytes of the duplicate blocks received from the peers
+    @NonNull
+    public Map<PeerId, Long> getDuplicateBytes() {
+        return contentManager.getDuplicateBytes();
     }
 
     @Override
     public void reset() {
         contentManager.reset();
+        engine.reset();
+        uploads.clear();
+        for (MessageQueue queue : queues.values()) {
+            queue.close();
+        }
+        queues.clear();
     }
 
 
@@ -65,6 +150,19 @@ public class BitSwap implements Interface {
 
         LogUtils.verbose(TAG, "ReceiveMessage " + peer.toBase58());
 
+        host.active(peer);
+
+        // the received blocks are verified (hashed) by the workers of the verifier
+        List<BitSwapMessage.Payload> payloads = incoming.TakePayloads();
+        long received = 0;
+        for (BitSwapMessage.Payload payload : payloads) {
+            received += payload.Size();
+            verifier.verify(peer, payload);
+        }
+        if (!payloads.isEmpty()) {
+            ledger.received(peer, received, payloads.size());
+        }
+
         List<Block> blocks = incoming.Blocks();
         List<Cid> haves = incoming.Haves();
         if (blocks.size() > 0 || haves.size() > 0) {
@@ -76,6 +174,15 @@ public class BitSwap implements Interface {
             }
         }
 
+        List<Cid> dontHaves = incoming.DontHaves();
+        if (dontHaves.size() > 0) {
+            try {
+                contentManager.dontHaveReceived(peer, dontHaves);
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, throwable);
+            }
+        }
+
         if (IPFS.BITSWAP_ENGINE_ACTIVE) {
             engine.MessageReceived(peer, incoming);
         }
@@ -103,58 +210,78 @@ public class BitSwap implements Interface {
     }
 
 
-    public void writeMessage(@NonNull Closeable closeable, @NonNull PeerId peerId,
-                             @NonNull BitSwapMessage message, short priority)
-            throws ClosedException, ProtocolIssue, TimeoutIssue, ConnectionIssue {
+    @NonNull
+    private MessageQueue getQueue(@NonNull PeerId peerId) {
+        return queues.computeIfAbsent(peerId, key -> new MessageQueue(host, key, writers));
+    }
 
-        if (IPFS.BITSWAP_REQUEST_ACTIVE) {
-            boolean success = false;
-            host.protectPeer(peerId, host.getShortTime());
+    // the state of the peer is removed when its connection was closed
+    public void disconnected(@NonNull PeerId peerId) {
+        MessageQueue queue = queues.remove(peerId);
+        if (queue != null) {
+            queue.close();
+        }
+        remove(peerId);
+    }
 
-            QuicClientConnection conn = host.connectTo(closeable, peerId, IPFS.CONNECT_TIMEOUT);
+    private void remove(@NonNull PeerId peerId) {
+        engine.remove(peerId);
+        contentManager.remove(peerId);
+        uploads.remove(peerId);
+    }
 
-            if (closeable.isClosed()) {
-                throw new ClosedException();
+    // removes the state of the peers which did not exchange messages for
+    // BITSWAP_PEER_IDLE (their connections may still be open)
+    private void cleanup() {
+        try {
+            long now = System.currentTimeMillis();
+            for (PeerId peerId : new ArrayList<>(queues.keySet())) {
+                AtomicReference<MessageQueue> idle = new AtomicReference<>();
+                queues.computeIfPresent(peerId, (key, queue) -> {
+                    if (queue.isIdle(now, IPFS.BITSWAP_PEER_IDLE)) {
+                        idle.set(queue);
+                        return null;
+                    }
+                    return queue;
+                });
+                MessageQueue queue = idle.get();
+                if (queue != null) {
+                    queue.close();
+                    remove(peerId);
+                }
             }
+            engine.cleanup(now, IPFS.BITSWAP_PEER_IDLE);
+            contentManager.getScores().cleanup(now, IPFS.BITSWAP_PEER_IDLE);
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
+    }
 
-            long time = System.currentTimeMillis();
-            try {
-
-                CompletableFuture<BitSwapSend> request = new CompletableFuture<>();
-
-                QuicStream quicStream = conn.createStream(true,
-                        IPFS.CONNECT_TIMEOUT, TimeUnit.SECONDS);
-                BitSwapSend bitSwapSend = new BitSwapSend(peerId, quicStream, request);
+    // true when the stream to the peer is open, a message is then only queued
+    public boolean isOpen(@NonNull PeerId peerId) {
+        MessageQueue queue = queues.get(peerId);
+        return queue != null && queue.isOpen();
+    }
 
-                // TODO streamChannel.updatePriority(new QuicStreamPriority(priority, false));
+    // writes a message of the engine, the caller waits until the messages which
+    // are queued for the peer were written (a slow peer slows down the sending)
+    public void sendMessage(@NonNull Closeable closeable, @NonNull PeerId peerId,
+                            @NonNull BitSwapMessage message)
+            throws ClosedException, ProtocolIssue, TimeoutIssue, ConnectionIssue {
+        writeMessage(closeable, peerId, message, IPFS.PRIORITY_NORMAL);
+        getQueue(peerId).await(closeable, IPFS.BITSWAP_MERGE_SIZE);
+    }
 
-                bitSwapSend.writeAndFlush(DataHandler.writeToken(IPFS.STREAM_PROTOCOL));
-                bitSwapSend.writeAndFlush(DataHandler.writeToken(IPFS.BITSWAP_PROTOCOL));
-                bitSwapSend.writeAndFlush(DataHandler.encode(message.ToProtoV1()));
-                bitSwapSend.closeOutputStream();
+    public void writeMessage(@NonNull Closeable closeable, @NonNull PeerId peerId,
+                             @NonNull BitSwapMessage message, short priority)
+            throws ClosedException, ProtocolIssue, TimeoutIssue, ConnectionIssue {
 
-                request.get(IPFS.CONNECT_TIMEOUT, TimeUnit.SECONDS);
+        if (IPFS.BITSWAP_REQUEST_ACTIVE) {
+            host.protectPeer(peerId, host.getShortTime());
+            host.active(peerId);
 
-                success = true;
-            } catch (Throwable throwable) {
-                LogUtils.error(TAG, "" + throwable);
-                Throwable cause = throwable.getCause();
-                if (cause != null) {
-                    if (cause instanceof ProtocolIssue) {
-                        throw new ProtocolIssue();
-                    }
-                    if (cause instanceof ConnectionIssue) {
-                        throw new ConnectionIssue();
-                    }
-                    if (cause instanceof TimeoutException) {
-                        throw new TimeoutIssue();
-                    }
-                }
-                throw new RuntimeException(throwable);
-            } finally {
-                LogUtils.debug(TAG, "Send took " + success + " " +
-                        peerId.toBase58() + " " + (System.currentTimeMillis() - time));
-            }
+            MessageQueue queue = getQueue(peerId);
+            queue.send(closeable, message);
         }
     }
 }
@@ -1,7 +1,5 @@
 package threads.lite.bitswap;
 
-import android.util.Pair;
-
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
@@ -9,18 +7,32 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import bitswap.pb.MessageOuterClass;
 import threads.lite.IPFS;
 import threads.lite.LogUtils;
 import threads.lite.cid.Cid;
 import threads.lite.cid.PeerId;
+import threads.lite.core.Closeable;
 import threads.lite.core.TimeoutCloseable;
 import threads.lite.format.Block;
 import threads.lite.format.BlockStore;
 
-
+// Serves the wants of other peers. The received wants are queued per peer
+// (ordered by the want priority), a pool of workers takes the peers round-robin
+// and sends each peer at most one message per turn, so a peer with a long
+// wantlist can not starve the others. A message contains as many blocks,
+// HAVEs and DONT_HAVEs as fit into BITSWAP_MERGE_SIZE. A peer which reached an
+// upload limit is queued again when the limit allows the next message.
 public class BitSwapEngine {
     public static final int MaxBlockSizeReplaceHasWithBlock = 1024;
     private static final String TAG = BitSwapEngine.class.getSimpleName();
@@ -28,9 +40,14 @@ public class BitSwapEngine {
 
     private final PeerId self;
 
-
     @NonNull
     private final BitSwap bitSwap;
+    private final ConcurrentHashMap<PeerId, PeerTasks> peers = new ConcurrentHashMap<>();
+    private final LinkedBlockingDeque<PeerId> ready = new LinkedBlockingDeque<>();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final ExecutorService workers = Executors.newFixedThreadPool(IPFS.BITSWAP_ENGINE_WORKERS);
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
 
     BitSwapEngine(@NonNull BitSwap bitSwap,
                   @NonNull BlockStore bs,
@@ -42,118 +59,139 @@ public class BitSwapEngine {
 
     }
 
-    private BitSwapMessage createMessage(@NonNull Task task) {
-
-        // Create a new message
-        BitSwapMessage msg = BitSwapMessage.New(false);
-
-        LogUtils.verbose(TAG,
-                "Bitswap process tasks" + " local " + self.toBase58());
-
-        // Amount of data in the request queue still waiting to be popped
-        msg.SetPendingBytes(0);
-
-        // Split out want-blocks, want-haves and DONT_HAVEs
-        List<Cid> blockCids = new ArrayList<>();
-        Map<Cid, TaskData> blockTasks = new HashMap<>();
-
-
-        Cid c = task.Topic;
-        TaskData td = task.Data;
-        if (td.HaveBlock) {
-            if (td.IsWantBlock) {
-                blockCids.add(c);
-                blockTasks.put(c, td);
-            } else {
-                // Add HAVES to the message
-                msg.AddHave(c);
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            for (int i = 0; i < IPFS.BITSWAP_ENGINE_WORKERS; i++) {
+                workers.execute(this::work);
             }
-        } else {
-            // Add DONT_HAVEs to the message
-            msg.AddDontHave(c);
         }
-
-
-        Map<Cid, Block> blks = getBlocks(blockCids);
-        for (Map.Entry<Cid, TaskData> entry : blockTasks.entrySet()) {
-            Block blk = blks.get(entry.getKey());
-            // If the block was not found (it has been removed)
-            if (blk == null) {
-                // If the client requested DONT_HAVE, add DONT_HAVE to the message
-                if (entry.getValue().SendDontHave) {
-                    msg.AddDontHave(entry.getKey());
-                }
-            } else {
-                LogUtils.error(TAG, "Block added to message " + blk.getCid().String());
-                msg.AddBlock(blk);
-            }
-        }
-        return msg;
-
     }
 
-    public Pair<List<BitSwapMessage.Entry>, List<BitSwapMessage.Entry>> splitWantsCancels(
-            @NonNull List<BitSwapMessage.Entry> es) {
-        List<BitSwapMessage.Entry> wants = new ArrayList<>();
-        List<BitSwapMessage.Entry> cancels = new ArrayList<>();
-        for (BitSwapMessage.Entry et : es) {
-            if (et.Cancel) {
-                cancels.add(et);
-            } else {
-                wants.add(et);
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            PeerId peer;
+            try {
+                peer = ready.take();
+            } catch (InterruptedException interruptedException) {
+                return;
+            }
+            PeerTasks tasks = peers.get(peer);
+            if (tasks == null) {
+                continue;
+            }
+            boolean delayed = false;
+            try {
+                List<Task> popped = tasks.pop(IPFS.BITSWAP_MERGE_SIZE);
+                int bytes = 0;
+                for (Task task : popped) {
+                    bytes += task.Size;
+                }
+                if (bytes > 0) {
+                    long wait = bitSwap.takeUpload(peer, bytes);
+                    if (wait > 0) {
+                        // the worker is not blocked by a limited peer, the peer
+                        // stays active and is queued again when the tokens are there
+                        tasks.restore(popped);
+                        delayed = true;
+                        timer.schedule(() -> ready.offer(peer), wait, TimeUnit.MILLISECONDS);
+                        continue;
+                    }
+                }
+                if (!popped.isEmpty()) {
+                    BitSwapMessage msg = createMessage(popped, tasks.getPendingBytes());
+                    if (!msg.Empty()) {
+                        Closeable closeable = new TimeoutCloseable(IPFS.BITSWAP_ENGINE_SEND_TIMEOUT);
+                        List<Block> blocks = msg.Blocks();
+                        bitSwap.sendMessage(closeable, peer, msg);
+                        if (!blocks.isEmpty()) {
+                            int sent = 0;
+                            for (Block block : blocks) {
+                                sent += block.getRawData().length;
+                            }
+                            bitSwap.getLedger().sent(peer, sent, blocks.size());
+                        }
+                    }
+                }
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, throwable);
+            } finally {
+                // the peer is taken again after all other ready peers
+                if (!delayed && tasks.release()) {
+                    ready.offer(peer);
+                }
             }
         }
-        return Pair.create(wants, cancels);
     }
 
+    private BitSwapMessage createMessage(@NonNull List<Task> tasks, int pendingBytes) {
 
-    public void MessageReceived(@NonNull PeerId peer, @NonNull BitSwapMessage m) {
-
-        List<BitSwapMessage.Entry> entries = m.Wantlist();
+        // Create a new message
+        BitSwapMessage msg = BitSwapMessage.New(false);
 
-        if (entries.size() > 0) {
-            for (BitSwapMessage.Entry et : entries) {
-                if (!et.Cancel) {
+        LogUtils.verbose(TAG,
+                "Bitswap process tasks " + tasks.size() + " local " + self.toBase58());
 
-                    if (et.WantType == MessageOuterClass.Message.Wantlist.WantType.Have) {
-                        LogUtils.verbose(TAG,
-                                "Bitswap engine <- want-have" +
-                                        "  local " + self.toBase58() + " from " + peer.toBase58()
-                                        + " cid " + et.Cid.String());
+        // Amount of data in the request queue still waiting to be popped
+        msg.SetPendingBytes(pendingBytes);
+
+        for (Task task : tasks) {
+            Cid c = task.Topic;
+            if (task.HaveBlock) {
+                if (task.IsWantBlock) {
+                    Block blk = blockstore.getBlock(c);
+                    // If the block was not found (it has been removed)
+                    if (blk == null) {
+                        // If the client requested DONT_HAVE, add DONT_HAVE to the message
+                        if (task.SendDontHave) {
+                            msg.AddDontHave(c);
+                        }
                     } else {
-                        LogUtils.verbose(TAG,
-                                "Bitswap engine <- want-block" +
-                                        "  local " + self.toBase58() + " from " + peer.toBase58()
-                                        + " cid " + et.Cid.String());
+                        LogUtils.verbose(TAG, "Block added to message " + blk.getCid().String());
+                        msg.AddBlock(blk);
                     }
+                } else {
+                    // Add HAVES to the message
+                    msg.AddHave(c);
                 }
+            } else {
+                // Add DONT_HAVEs to the message
+                msg.AddDontHave(c);
             }
         }
+        return msg;
+    }
+
+
+    public void MessageReceived(@NonNull PeerId peer, @NonNull BitSwapMessage m) {
 
         if (m.Empty()) {
             LogUtils.info(TAG, "received empty message from " + peer);
         }
 
-
-        Pair<List<BitSwapMessage.Entry>, List<BitSwapMessage.Entry>> result = splitWantsCancels(entries);
-        List<BitSwapMessage.Entry> wants = result.first;
-
+        List<BitSwapMessage.Entry> entries = m.Wantlist();
+        if (entries.isEmpty() && !m.Full()) {
+            return;
+        }
 
         Set<Cid> wantKs = new HashSet<>();
-        for (BitSwapMessage.Entry entry : wants) {
-            wantKs.add(entry.Cid);
+        for (BitSwapMessage.Entry entry : entries) {
+            if (!entry.Cancel) {
+                wantKs.add(entry.Cid);
+            }
         }
-
-
         HashMap<Cid, Integer> blockSizes = getBlockSizes(wantKs);
 
+        List<Task> tasks = new ArrayList<>();
+        List<Cid> cancels = new ArrayList<>();
+        for (BitSwapMessage.Entry entry : entries) {
+            if (entry.Cancel) {
+                LogUtils.verbose(TAG, "Bitswap engine <- cancel local " + self.toBase58() +
+                        " from " + peer.toBase58() + " cid " + entry.Cid.String());
+                cancels.add(entry.Cid);
+                continue;
+            }
 
-        for (BitSwapMessage.Entry entry : wants) {
-            // For each want-have / want-block
-
-            Cid c = entry.Cid;
             Integer blockSize = blockSizes.get(entry.Cid);
-
             if (blockSize == null) {
                 LogUtils.verbose(TAG,
                         "Bitswap engine: block not found" + " local " + self.toBase58()
@@ -162,41 +200,36 @@ public class BitSwapEngine {
 
                 // Only add the task to the queue if the requester wants a DONT_HAVE
                 if (IPFS.SEND_DONT_HAVES && entry.SendDontHave) {
-
-                    boolean isWantBlock = false;
-                    if (entry.WantType == MessageOuterClass.Message.Wantlist.WantType.Block) {
-                        isWantBlock = true;
-                    }
-
-                    Task task = new Task(c,
-                            new TaskData(false, isWantBlock, entry.SendDontHave));
-                    BitSwapMessage msg = createMessage(task);
-                    if (!msg.Empty()) {
-                        try {
-                            bitSwap.writeMessage(new TimeoutCloseable(5), peer, msg, IPFS.PRIORITY_NORMAL);
-                        } catch (Throwable throwable) {
-                            LogUtils.error(TAG, throwable);
-                        }
-                    }
+                    boolean isWantBlock =
+                            entry.WantType == MessageOuterClass.Message.Wantlist.WantType.Block;
+                    tasks.add(new Task(entry.Cid, entry.Priority, 0,
+                            false, isWantBlock, true));
                 }
             } else {
                 boolean isWantBlock = sendAsBlock(entry.WantType, blockSize);
 
                 LogUtils.verbose(TAG,
-                        "Bitswap engine: block found" + "local" + self.toBase58() +
-                                "from " + peer + " cid " + entry.Cid.String()
+                        "Bitswap engine: block found" + " local " + self.toBase58() +
+                                " from " + peer + " cid " + entry.Cid.String()
                                 + " isWantBlock " + isWantBlock);
 
-                Task task = new Task(c, new TaskData(true, isWantBlock, entry.SendDontHave));
-                BitSwapMessage msg = createMessage(task);
-                if (!msg.Empty()) {
-                    try {
-                        bitSwap.writeMessage(new TimeoutCloseable(10), peer, msg, IPFS.PRIORITY_NORMAL);
-                    } catch (Throwable throwable) {
-                        LogUtils.error(TAG, throwable);
-                    }
-                }
+                tasks.add(new Task(entry.Cid, entry.Priority, isWantBlock ? blockSize : 0,
+                        true, isWantBlock, entry.SendDontHave));
+            }
+        }
+
+        // the update is atomic with a removal of the peer (see cleanup)
+        AtomicBoolean queue = new AtomicBoolean(false);
+        peers.compute(peer, (key, peerTasks) -> {
+            if (peerTasks == null) {
+                peerTasks = new PeerTasks();
             }
+            queue.set(peerTasks.update(m.Full(), tasks, cancels));
+            return peerTasks;
+        });
+        if (queue.get()) {
+            start();
+            ready.offer(peer);
         }
     }
 
@@ -205,18 +238,6 @@ public class BitSwapEngine {
         return isWantBlock || blockSize <= MaxBlockSizeReplaceHasWithBlock;
     }
 
-
-    public Map<Cid, Block> getBlocks(@NonNull List<Cid> cids) {
-        Map<Cid, Block> blks = new HashMap<>();
-        for (Cid c : cids) {
-            Block block = blockstore.getBlock(c);
-            if (block != null) {
-                blks.put(c, block);
-            }
-        }
-        return blks;
-    }
-
     public HashMap<Cid, Integer> getBlockSizes(@NonNull Set<Cid> wantKs) {
 
         HashMap<Cid, Integer> sizes = new HashMap<>();
@@ -229,36 +250,170 @@ public class BitSwapEngine {
         return sizes;
     }
 
+    public void reset() {
+        for (PeerTasks tasks : peers.values()) {
+            tasks.clear();
+        }
+    }
 
-    private static class Task {
-        // Topic for the task
-        public final Cid Topic;
-        // Arbitrary data associated with this Task by the client
-        public final TaskData Data;
-
-        public Task(@NonNull Cid topic, @NonNull TaskData data) {
-            this.Topic = topic;
-            this.Data = data;
+    // the wants of the peer are dropped
+    public void remove(@NonNull PeerId peer) {
+        PeerTasks tasks = peers.remove(peer);
+        if (tasks != null) {
+            tasks.clear();
         }
+    }
 
+    // removes the peers which have no wants and did not send any for the given time
+    public void cleanup(long now, long idle) {
+        for (PeerId peer : new ArrayList<>(peers.keySet())) {
+            peers.computeIfPresent(peer, (key, tasks) -> tasks.isIdle(now, idle) ? null : tasks);
+        }
     }
 
 
-    private static class TaskData {
+    private static class Task implements Comparable<Task> {
+        // Topic for the task
+        final Cid Topic;
+        final int Priority;
+        // Size of the block which is sent, 0 for HAVE and DONT_HAVE
+        final int Size;
         // Tasks can be want-have or want-block
         final boolean IsWantBlock;
         // Whether to immediately send a response if the block is not found
         final boolean SendDontHave;
         // Whether the block was found
         final boolean HaveBlock;
+        long sequence;
 
-        public TaskData(boolean haveBlock, boolean isWantBlock, boolean sendDontHave) {
+        Task(@NonNull Cid topic, int priority, int size, boolean haveBlock,
+             boolean isWantBlock, boolean sendDontHave) {
+            this.Topic = topic;
+            this.Priority = priority;
+            this.Size = size;
             this.SendDontHave = sendDontHave;
             this.IsWantBlock = isWantBlock;
             this.HaveBlock = haveBlock;
         }
 
+        // the size of a HAVE or DONT_HAVE entry in a message
+        int getMessageSize() {
+            return Size > 0 ? Size : BitSwapMessage.BlockPresenceSize(Topic);
+        }
 
+        @Override
+        public int compareTo(Task o) {
+            int cmp = Integer.compare(o.Priority, Priority);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
     }
 
+
+    // the wants of one peer, "active" is set while the peer is queued in the
+    // ready queue or handled by a worker, so a peer is handled by one worker only
+    private static class PeerTasks {
+        private final PriorityQueue<Task> queue = new PriorityQueue<>();
+        private final Map<Cid, Task> tasks = new HashMap<>();
+        private long sequence = 0;
+        private int pendingBytes = 0;
+        private boolean active = false;
+        private long updated = System.currentTimeMillis();
+
+        // returns true when the peer has to be added to the ready queue
+        synchronized boolean update(boolean full, @NonNull List<Task> wants,
+                                    @NonNull List<Cid> cancels) {
+            updated = System.currentTimeMillis();
+            if (full) {
+                // a full wantlist replaces the former one
+                clear();
+            }
+            for (Cid cid : cancels) {
+                remove(cid);
+            }
+            for (Task task : wants) {
+                Task existing = tasks.get(task.Topic);
+                if (existing != null) {
+                    // a want-block replaces a want-have, not the other way round
+                    if (existing.IsWantBlock && !task.IsWantBlock) {
+                        continue;
+                    }
+                    remove(task.Topic);
+                }
+                task.sequence = sequence++;
+                tasks.put(task.Topic, task);
+                queue.add(task);
+                pendingBytes += task.Size;
+            }
+            if (!active && !queue.isEmpty()) {
+                active = true;
+                return true;
+            }
+            return false;
+        }
+
+        private void remove(@NonNull Cid cid) {
+            Task task = tasks.remove(cid);
+            if (task != null) {
+                queue.remove(task);
+                pendingBytes -= task.Size;
+            }
+        }
+
+        synchronized void clear() {
+            queue.clear();
+            tasks.clear();
+            pendingBytes = 0;
+        }
+
+        // the tasks with the highest priority which fit into a message of the
+        // given size (at least one task)
+        @NonNull
+        synchronized List<Task> pop(int maxSize) {
+            List<Task> result = new ArrayList<>();
+            int size = 0;
+            Task task = queue.peek();
+            while (task != null) {
+                int taskSize = task.getMessageSize();
+                if (!result.isEmpty() && size + taskSize > maxSize) {
+                    break;
+                }
+                queue.poll();
+                tasks.remove(task.Topic);
+                pendingBytes -= task.Size;
+                size += taskSize;
+                result.add(task);
+                task = queue.peek();
+            }
+            return result;
+        }
+
+        // the popped tasks are queued again in their former order, unless the
+        // peer wanted the cid again in the meantime
+        synchronized void restore(@NonNull List<Task> popped) {
+            for (Task task : popped) {
+                if (!tasks.containsKey(task.Topic)) {
+                    tasks.put(task.Topic, task);
+                    queue.add(task);
+                    pendingBytes += task.Size;
+                }
+            }
+        }
+
+        synchronized boolean isIdle(long now, long idle) {
+            return !active && queue.isEmpty() && now - updated > idle;
+        }
+
+        synchronized int getPendingBytes() {
+            return pendingBytes;
+        }
+
+        // returns true when the peer has still tasks and stays active
+        synchronized boolean release() {
+            active = !queue.isEmpty();
+            return active;
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package threads.lite.bitswap;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
@@ -42,18 +43,15 @@ public interface BitSwapMessage {
             }
             m.addEntry(cid, e.getPriority(), e.getCancel(), e.getWantType(), e.getSendDontHave());
         }
+        // the blocks are hashed later (see Payloads), not in the thread which
+        // reads the stream
         // deprecated
         for (ByteString data : pbm.getBlocksList()) {
             // CIDv0, sha256, protobuf only
-            Block block = BasicBlock.createBlock(data.toByteArray());
-            m.AddBlock(block);
+            m.payloads.add(new Payload(null, data.toByteArray()));
         }
         for (MessageOuterClass.Message.Block b : pbm.getPayloadList()) {
-            ByteString prefix = b.getPrefix();
-            Prefix pref = Prefix.getPrefixFromBytes(prefix.toByteArray());
-            Cid cid = pref.sum(b.getData().toByteArray());
-            Block block = BasicBlock.createBlockWithCid(cid, b.getData().toByteArray());
-            m.AddBlock(block);
+            m.payloads.add(new Payload(b.getPrefix().toByteArray(), b.getData().toByteArray()));
         }
 
         for (MessageOuterClass.Message.BlockPresence bi : pbm.getBlockPresencesList()) {
@@ -81,9 +79,13 @@ public interface BitSwapMessage {
     // the sender.
     List<Entry> Wantlist();
 
-    // Blocks returns a slice of unique blocks.
+    // Blocks returns a slice of unique blocks (received payloads are verified first).
     List<Block> Blocks();
 
+    // TakePayloads returns the received blocks which are not verified yet and
+    // removes them from the message, so they can be verified in parallel
+    List<Payload> TakePayloads();
+
     // BlockPresences returns the list of HAVE / DONT_HAVE in the message
     List<BlockPresence> BlockPresences();
 
@@ -143,6 +145,10 @@ public interface BitSwapMessage {
     // Clone the message fields
     BitSwapMessage Clone();
 
+    // Merge adds the entries, blocks and block presences of the given message,
+    // a later want or cancel of the same Cid replaces the former one
+    void Merge(@NonNull BitSwapMessage message);
+
 
     // Entry is a wantlist entry in a Bitswap message, with flags indicating
     // - whether message is a cancel
@@ -174,6 +180,35 @@ public interface BitSwapMessage {
     }
 
 
+    // Payload is a received block, its cid is computed (and so the data verified)
+    // by verify
+    class Payload {
+        @Nullable
+        private final byte[] prefix;
+        @NonNull
+        private final byte[] data;
+
+        Payload(@Nullable byte[] prefix, @NonNull byte[] data) {
+            this.prefix = prefix;
+            this.data = data;
+        }
+
+        public int Size() {
+            return data.length;
+        }
+
+        @NonNull
+        public Block verify() {
+            if (prefix == null) {
+                return BasicBlock.createBlock(data);
+            }
+            Prefix pref = Prefix.getPrefixFromBytes(prefix);
+            Cid cid = pref.sum(data);
+            return BasicBlock.createBlockWithCid(cid, data);
+        }
+    }
+
+
     // BitSwapMessage is the basic interface for interacting building, encoding,
     // and decoding messages sent on the BitSwap protocol.
     // BlockPresence represents a HAVE / DONT_HAVE for a given Cid
@@ -187,6 +222,7 @@ public interface BitSwapMessage {
         private static final String TAG = BitSwapMessage.class.getSimpleName();
         final HashMap<Cid, Entry> wantlist = new HashMap<>();
         final HashMap<Cid, Block> blocks = new HashMap<>();
+        final List<Payload> payloads = new ArrayList<>();
         final HashMap<Cid, MessageOuterClass.Message.BlockPresenceType> blockPresences = new HashMap<>();
         boolean full;
         int pendingBytes;
@@ -241,9 +277,20 @@ public interface BitSwapMessage {
 
         @Override
         public List<Block> Blocks() {
+            for (Payload payload : payloads) {
+                AddBlock(payload.verify());
+            }
+            payloads.clear();
             return new ArrayList<>(blocks.values());
         }
 
+        @Override
+        public List<Payload> TakePayloads() {
+            List<Payload> result = new ArrayList<>(payloads);
+            payloads.clear();
+            return result;
+        }
+
         @Override
         public List<BlockPresence> BlockPresences() {
 
@@ -302,7 +349,8 @@ public interface BitSwapMessage {
 
         @Override
         public boolean Empty() {
-            return blocks.size() == 0 && wantlist.size() == 0 && blockPresences.size() == 0;
+            return blocks.size() == 0 && payloads.size() == 0 &&
+                    wantlist.size() == 0 && blockPresences.size() == 0;
         }
 
         private int BlockPresenceSize(@NonNull Cid c) {
@@ -319,6 +367,9 @@ public interface BitSwapMessage {
             for (Block b : blocks.values()) {
                 size += b.getRawData().length;
             }
+            for (Payload payload : payloads) {
+                size += payload.Size();
+            }
             for (Cid c : blockPresences.keySet()) {
                 size += BlockPresenceSize(c);
             }
@@ -437,6 +488,7 @@ public interface BitSwapMessage {
             this.full = full;
             wantlist.clear();
             blocks.clear();
+            payloads.clear();
             blockPresences.clear();
             this.pendingBytes = 0;
         }
@@ -446,10 +498,29 @@ public interface BitSwapMessage {
             BitSwapMessageImpl msg = new BitSwapMessageImpl(full);
             msg.blockPresences.putAll(blockPresences);
             msg.blocks.putAll(blocks);
+            msg.payloads.addAll(payloads);
             msg.wantlist.putAll(wantlist);
             msg.pendingBytes = pendingBytes;
             return msg;
         }
 
+        @Override
+        public void Merge(@NonNull BitSwapMessage message) {
+            for (Entry entry : message.Wantlist()) {
+                Entry existing = wantlist.get(entry.Cid);
+                if (existing != null && existing.Cancel != entry.Cancel) {
+                    wantlist.remove(entry.Cid);
+                }
+                addEntry(entry.Cid, entry.Priority, entry.Cancel, entry.WantType, entry.SendDontHave);
+            }
+            for (Block block : message.Blocks()) {
+                AddBlock(block);
+            }
+            for (BlockPresence blockPresence : message.BlockPresences()) {
+                AddBlockPresence(blockPresence.Cid, blockPresence.Type);
+            }
+            pendingBytes = message.PendingBytes();
+        }
+
     }
 }
@@ -25,6 +25,7 @@ public class BitSwapSend extends QuicStreamHandler {
     private final CompletableFuture<BitSwapSend> done;
     @NonNull
     private final PeerId peerId;
+    private volatile boolean failed = false;
 
     public BitSwapSend(@NonNull PeerId peerId,
                        @NonNull QuicStream quicStream,
@@ -38,10 +39,16 @@ public class BitSwapSend extends QuicStreamHandler {
 
     public void exceptionCaught(@NonNull Throwable cause) {
         LogUtils.debug(TAG, "" + cause);
+        failed = true;
         done.completeExceptionally(cause);
         reader.clear();
     }
 
+    // a failed stream can not be used anymore (write or protocol error)
+    public boolean isFailed() {
+        return failed;
+    }
+
     public void channelRead0(@NonNull byte[] msg)
             throws Exception {
 
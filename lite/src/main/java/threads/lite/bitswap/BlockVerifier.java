@@ -0,0 +1,52 @@
+package threads.lite.bitswap;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import threads.lite.IPFS;
+import threads.lite.LogUtils;
+import threads.lite.cid.PeerId;
+import threads.lite.format.Block;
+
+// Hashes the received blocks in a small pool of workers, so the thread which reads
+// a stream is not blocked by the hashing of large blocks. Only verified blocks are
+// handed to the content manager (stored and released to the waiting requests).
+//
+// When the queue of the workers is full, the reading thread verifies the block
+// itself, which slows down the reading of the stream (back pressure).
+public class BlockVerifier {
+
+    private static final String TAG = BlockVerifier.class.getSimpleName();
+    private final ThreadPoolExecutor workers;
+    private final ContentManager contentManager;
+
+    public BlockVerifier(@NonNull ContentManager contentManager) {
+        this.contentManager = contentManager;
+        int threads = Math.max(1, Math.min(IPFS.BITSWAP_VERIFY_WORKERS,
+                Runtime.getRuntime().availableProcessors()));
+        this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(IPFS.BITSWAP_VERIFY_QUEUE),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    public void verify(@NonNull PeerId peer, @NonNull BitSwapMessage.Payload payload) {
+        workers.execute(() -> {
+            Block block;
+            try {
+                block = payload.verify();
+            } catch (Throwable throwable) {
+                // the data does not match a supported prefix, it is dropped
+                LogUtils.error(TAG, "Invalid block from " + peer.toBase58() + " " +
+                        throwable.getMessage());
+                return;
+            }
+            LogUtils.verbose(TAG, "ReceiveBlock " + peer.toBase58() +
+                    " " + block.getCid().String());
+            contentManager.blockReceived(peer, block);
+        });
+    }
+}
@@ -1,59 +1,91 @@
 package threads.lite.bitswap;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import threads.lite.IPFS;
-import threads.lite.LogUtils;
 import threads.lite.cid.Cid;
 import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+import threads.lite.format.Block;
 
+// Registry of the running block requests, there is at most one request per cid.
+// The future of a request is completed with the block when it arrives, or with
+// null when the request is cancelled.
 public class Blocker {
-    private static final String TAG = Blocker.class.getSimpleName();
-
 
-    public void subscribe(@NonNull Cid cid, @NonNull Closeable closeable) {
+    private final ConcurrentHashMap<Cid, CompletableFuture<Block>> waiters = new ConcurrentHashMap<>();
 
-        String key = "B" + cid.String();
-        long start = System.currentTimeMillis();
-        synchronized (key.intern()) {
+    // waits at most timeout ms for the future, returns null when the block did not
+    // arrive in time, the request was cancelled or the closeable is closed
+    @Nullable
+    public static Block await(@NonNull Closeable closeable, @NonNull CompletableFuture<Block> future,
+                              long timeout) throws ClosedException {
+        long end = System.currentTimeMillis() + timeout;
+        while (true) {
+            if (future.isDone()) {
+                return getNow(future);
+            }
+            if (closeable.isClosed()) {
+                return null;
+            }
+            long left = end - System.currentTimeMillis();
+            if (left <= 0) {
+                return null;
+            }
             try {
-                // Calling wait() will block this thread until another thread
-                // calls notify() on the object.
-                LogUtils.verbose(TAG, "Lock " + cid.String());
-                Thread thread = new Thread(() -> {
-                    try {
-                        while (true) {
-                            if (closeable.isClosed()) {
-                                release(cid);
-                                break;
-                            }
-                            Thread.sleep(25);
-                        }
-                    } catch (InterruptedException e) {
-                        release(cid);
-                    }
-                });
-                thread.start();
-                key.intern().wait(IPFS.WANTS_WAIT_TIMEOUT);
-                thread.interrupt();
-            } catch (Throwable throwable) {
-                LogUtils.error(TAG, throwable);
-            } finally {
-                LogUtils.verbose(TAG, "Lock Finish " + cid.String() +
-                        " took " + (System.currentTimeMillis() - start));
+                return future.get(Math.min(left, IPFS.WANTS_CLOSE_INTERVAL), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignore) {
+                // the closeable is checked again
+            } catch (ExecutionException | CancellationException ignore) {
+                return null;
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new ClosedException();
             }
         }
     }
 
-    public void release(@NonNull Cid cid) {
+    @Nullable
+    private static Block getNow(@NonNull CompletableFuture<Block> future) {
         try {
-            String key = "B" + cid.String();
-            synchronized (key.intern()) {
-                key.intern().notify();
-            }
+            return future.getNow(null);
         } catch (Throwable ignore) {
-            // ignore
+            return null;
         }
     }
 
+    // registers the request of the caller, returns the future of the already
+    // running request of the block, or null when the caller owns the request
+    @Nullable
+    public CompletableFuture<Block> register(@NonNull Cid cid, @NonNull CompletableFuture<Block> future) {
+        return waiters.putIfAbsent(cid, future);
+    }
+
+    // removes the request of the owner, waiting callers see a null block when
+    // the block did not arrive
+    public void unregister(@NonNull Cid cid, @NonNull CompletableFuture<Block> future) {
+        waiters.remove(cid, future);
+        future.complete(null);
+    }
+
+    public void release(@NonNull Block block) {
+        CompletableFuture<Block> future = waiters.get(block.getCid());
+        if (future != null) {
+            future.complete(block);
+        }
+    }
+
+    public void cancel() {
+        for (CompletableFuture<Block> future : waiters.values()) {
+            future.complete(null);
+        }
+    }
 }
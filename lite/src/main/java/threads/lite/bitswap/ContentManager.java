@@ -1,18 +1,23 @@
 package threads.lite.bitswap;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import bitswap.pb.MessageOuterClass;
 import threads.lite.IPFS;
@@ -23,6 +28,7 @@ import threads.lite.core.Closeable;
 import threads.lite.core.ClosedException;
 import threads.lite.core.ConnectionIssue;
 import threads.lite.core.ProtocolIssue;
+import threads.lite.core.TimeoutCloseable;
 import threads.lite.core.TimeoutIssue;
 import threads.lite.format.Block;
 import threads.lite.format.BlockStore;
@@ -36,34 +42,110 @@ public class ContentManager {
     private final LiteHost host;
     private final BlockStore blockStore;
     private final ExecutorService providers = Executors.newFixedThreadPool(8);
+    private final ExecutorService senders = Executors.newFixedThreadPool(IPFS.BITSWAP_SEND_WORKERS);
     private final ConcurrentSkipListSet<PeerId> whitelist = new ConcurrentSkipListSet<>();
     private final ConcurrentSkipListSet<PeerId> priority = new ConcurrentSkipListSet<>();
     private final ConcurrentSkipListSet<Cid> loads = new ConcurrentSkipListSet<>();
-    private final ConcurrentHashMap<Cid, ConcurrentLinkedDeque<PeerId>> matches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Cid, Session> sessions = new ConcurrentHashMap<>();
+    private final Session session;
     private final Blocker blocker = new Blocker();
+    private final PeerScores scores = new PeerScores();
+    // want-haves and want-blocks which were sent to a peer and are not cancelled yet
+    private final ConcurrentHashMap<PeerId, Set<Cid>> outstanding = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<PeerId, Set<Cid>> cancels = new ConcurrentHashMap<>();
+    private final AtomicBoolean cancelScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService cancelSender =
+            Executors.newSingleThreadScheduledExecutor();
+    private final ConcurrentHashMap<PeerId, AtomicLong> duplicates = new ConcurrentHashMap<>();
     private final BitSwap bitSwap;
 
     public ContentManager(@NonNull BitSwap bitSwap, @NonNull BlockStore blockStore, @NonNull LiteHost host) {
         this.bitSwap = bitSwap;
         this.blockStore = blockStore;
         this.host = host;
+        this.session = new Session(this, null, IPFS.BITSWAP_SESSION_WINDOW);
     }
 
 
+    @NonNull
+    public Session getSession(@NonNull Cid root) {
+        prune();
+        return sessions.computeIfAbsent(root, key ->
+                new Session(this, key, IPFS.BITSWAP_SESSION_WINDOW));
+    }
+
+    @NonNull
+    public Session getSession() {
+        return session;
+    }
+
+    // sessions are removed when they have no outstanding wants and were not used
+    // for a while (a Reader which is not closed keeps it alive)
+    private void prune() {
+        long now = System.currentTimeMillis();
+        for (Session value : sessions.values()) {
+            if (value.isIdle() && (now - value.getLastUsed()) > IPFS.BITSWAP_SESSION_IDLE) {
+                sessions.remove(value.getRoot(), value);
+            }
+        }
+    }
+
+    @NonNull
+    private List<Session> getSessions() {
+        List<Session> result = new ArrayList<>(sessions.values());
+        result.add(session);
+        return result;
+    }
+
     public void haveReceived(@NonNull PeerId peer, @NonNull List<Cid> cids) {
 
+        Set<Session> touched = new HashSet<>();
         for (Cid cid : cids) {
+            for (Session value : getSessions()) {
+                if (value.haveReceived(peer, cid)) {
+                    LogUtils.info(TAG, "HaveReceived " + cid.String() + " " + peer.toBase58());
+                    priority.add(peer);
+                    touched.add(value);
+                }
+            }
+        }
 
-            ConcurrentLinkedDeque<PeerId> res = matches.get(cid);
-            if (res != null) {
-                res.add(peer);
-
-                LogUtils.info(TAG, "HaveReceived " + cid.String() + " " + peer.toBase58());
+        // the want-blocks for the new haves are sent right away
+        for (Session value : touched) {
+            pump(value);
+        }
+    }
 
-                priority.add(peer);
+    // the peer does not have the blocks, it is no candidate for them any more and
+    // when all asked peers declined a want, the providers are searched right away
+    public void dontHaveReceived(@NonNull PeerId peer, @NonNull List<Cid> cids) {
 
+        Set<Session> touched = new HashSet<>();
+        for (Cid cid : cids) {
+            outstanding(peer, cid);
+            for (Session value : getSessions()) {
+                Session.Want want = value.dontHaveReceived(peer, cid);
+                if (want == null) {
+                    continue;
+                }
+                LogUtils.info(TAG, "DontHaveReceived " + cid.String() + " " + peer.toBase58());
+                host.removeProvider(cid, peer);
+                synchronized (want) {
+                    if (peer.equals(want.peer) && want.sent > 0) {
+                        // the want-block is sent to another peer with the pump
+                        want.sent = 0;
+                    }
+                }
+                touched.add(value);
+                if (want.isDeclined()) {
+                    loadProviders(want::isClosed, cid);
+                }
             }
         }
+
+        for (Session value : touched) {
+            pump(value);
+        }
     }
 
     public void reset() {
@@ -73,15 +155,30 @@ public class ContentManager {
             loads.clear();
             priority.clear();
             whitelist.clear();
-            matches.clear();
+            sessions.clear();
+            session.reset();
+            blocker.cancel();
+            outstanding.clear();
+            cancels.clear();
+            duplicates.clear();
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
         }
     }
 
+    // a message to a peer with an open stream is only queued, so it is sent by the
+    // caller, otherwise the stream is opened by one of the senders
+    private void run(@NonNull PeerId peer, @NonNull Runnable runnable) {
+        if (bitSwap.isOpen(peer)) {
+            runnable.run();
+        } else {
+            senders.execute(runnable);
+        }
+    }
+
     public void runHaveMessage(@NonNull Closeable closeable, @NonNull PeerId peer,
                                @NonNull List<Cid> cids) {
-        new Thread(() -> {
+        run(peer, () -> {
             long start = System.currentTimeMillis();
             boolean success = false;
             try {
@@ -101,61 +198,380 @@ public class ContentManager {
                 LogUtils.debug(TAG, "Priority Peer " + success + " " +
                         peer.toBase58() + " took " + (System.currentTimeMillis() - start));
             }
-        }).start();
+        });
+    }
+
+    public void runWantMessage(@NonNull Session session, @NonNull Closeable closeable,
+                               @NonNull PeerId peer, @NonNull List<Cid> cids) {
+        run(peer, () -> {
+            long start = System.currentTimeMillis();
+            boolean success = false;
+            try {
+                if (closeable.isClosed()) {
+                    return;
+                }
+                sendWantsMessage(closeable, peer, cids);
+                success = true;
+                whitelist.add(peer);
+            } catch (ClosedException ignore) {
+                // ignore
+            } catch (Throwable throwable) {
+                if (!(throwable instanceof ProtocolIssue) && !(throwable instanceof TimeoutIssue)) {
+                    whitelist.remove(peer);
+                }
+                LogUtils.debug(TAG, "Match Peer " + peer.toBase58() + " " +
+                        throwable.getClass().getName());
+            } finally {
+                if (!success) {
+                    // the wants are sent to another peer with the next pump
+                    scores.failure(peer);
+                    session.removePeer(peer);
+                    for (Cid cid : cids) {
+                        Session.Want want = session.getWant(cid);
+                        if (want != null) {
+                            synchronized (want) {
+                                if (peer.equals(want.peer)) {
+                                    want.sent = 0;
+                                }
+                            }
+                        }
+                    }
+                }
+                LogUtils.debug(TAG, "Match Peer " + success + " " +
+                        peer.toBase58() + " took " + (System.currentTimeMillis() - start));
+            }
+        });
+    }
+
+    // the blocks which are stored already are not queued, this runs on the thread
+    // of the caller and not on the receive path
+    public void preload(@NonNull Session session, @NonNull Closeable closeable,
+                        @NonNull List<Cid> cids) {
+        if (closeable.isClosed()) {
+            return;
+        }
+        List<Cid> missing = new ArrayList<>();
+        for (Cid cid : cids) {
+            if (!blockStore.hasBlock(cid)) {
+                missing.add(cid);
+            }
+        }
+        session.queue(closeable, missing);
+        pump(session);
+    }
+
+    // the wants of closed callers are dropped and cancelled at the peers, the
+    // free slots of the window are filled with queued wants
+    public void purge(@NonNull Session session) {
+        for (Cid cid : session.drop()) {
+            cancelAll(null, cid);
+        }
+        pump(session);
+    }
+
+    // sends the wants of the session, a want is sent as want-block to one peer
+    // which has it (or delivered other blocks of the session), otherwise it is
+    // sent as want-have to all peers which were not asked before. All wants for
+    // the same peer are sent in one message, which is closed when all wants of
+    // it are closed.
+    public void pump(@NonNull Session session) {
+
+        for (Cid cid : session.drop()) {
+            cancelAll(null, cid);
+        }
+        session.fill();
+
+        long now = System.currentTimeMillis();
+        Map<PeerId, List<Session.Want>> blocks = new HashMap<>();
+        Map<PeerId, List<Session.Want>> haves = new HashMap<>();
+        List<PeerId> broadcast = new ArrayList<>(priority);
+        boolean striped = session.isStriped();
+
+        // outstanding want-blocks per peer, the wants of a striped session are
+        // spread over the peers by it
+        Map<PeerId, Integer> load = new HashMap<>();
+        if (striped) {
+            for (Session.Want want : session.getWants()) {
+                PeerId peer = want.peer;
+                if (peer != null && want.sent > 0 &&
+                        (now - want.sent) < IPFS.BITSWAP_WANT_TIMEOUT) {
+                    Integer value = load.get(peer);
+                    load.put(peer, value == null ? 1 : value + 1);
+                }
+            }
+        }
+
+        for (Session.Want want : session.getWants()) {
+            synchronized (want) {
+                if (want.sent > 0) {
+                    if ((now - want.sent) < IPFS.BITSWAP_WANT_TIMEOUT) {
+                        continue;
+                    }
+                    LogUtils.debug(TAG, "Want Timeout " + want.cid.String());
+                    if (want.peer != null) {
+                        scores.failure(want.peer);
+                        // the block is requested from another peer, a late block of
+                        // the slow peer would be a duplicate
+                        cancel(want.peer, want.cid);
+                    }
+                    want.sent = 0;
+                }
+                PeerId peer = striped ? stripe(session, want, load) : select(session, want);
+                if (peer != null) {
+                    want.peer = peer;
+                    want.sent = now;
+                    want.tried.add(peer);
+                    sent(peer, want.cid);
+                    List<Session.Want> list = blocks.get(peer);
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        blocks.put(peer, list);
+                    }
+                    list.add(want);
+                } else {
+                    boolean asked = false;
+                    for (PeerId candidate : broadcast) {
+                        if (want.tried.contains(candidate) ||
+                                want.declined.contains(candidate)) {
+                            // the peer was sent a want-block already or does not
+                            // have the block
+                            continue;
+                        }
+                        if (want.asked.add(candidate)) {
+                            asked = true;
+                            sent(candidate, want.cid);
+                            List<Session.Want> list = haves.get(candidate);
+                            if (list == null) {
+                                list = new ArrayList<>();
+                                haves.put(candidate, list);
+                            }
+                            list.add(want);
+                        }
+                    }
+                    if (!asked) {
+                        // all known peers failed, they are tried again with the next pump
+                        want.tried.clear();
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<PeerId, List<Session.Want>> entry : blocks.entrySet()) {
+            List<Session.Want> list = entry.getValue();
+            runWantMessage(session, closeable(list), entry.getKey(), cids(list));
+        }
+        for (Map.Entry<PeerId, List<Session.Want>> entry : haves.entrySet()) {
+            List<Session.Want> list = entry.getValue();
+            runHaveMessage(closeable(list), entry.getKey(), cids(list));
+        }
+    }
+
+    @NonNull
+    private static Closeable closeable(@NonNull List<Session.Want> wants) {
+        return () -> {
+            for (Session.Want want : wants) {
+                if (!want.isClosed()) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    @NonNull
+    private static List<Cid> cids(@NonNull List<Session.Want> wants) {
+        List<Cid> cids = new ArrayList<>();
+        for (Session.Want want : wants) {
+            cids.add(want.cid);
+        }
+        return cids;
+    }
+
+    // the best scored peer which announced the block, otherwise the best scored
+    // peer which delivered other blocks of the session, a peer is tried only
+    // once per want
+    @Nullable
+    private PeerId select(@NonNull Session session, @NonNull Session.Want want) {
+        return scores.select(candidates(session, want, false));
+    }
+
+    // the candidate which is expected to deliver the want first, its outstanding
+    // want-blocks (plus this one) divided by its expected blocks per second. So the
+    // wants are split over the peers in proportion to their throughput, a peer which
+    // slows down gets less new wants and its outstanding ones are sent to other
+    // peers after the want timeout
+    @Nullable
+    private PeerId stripe(@NonNull Session session, @NonNull Session.Want want,
+                          @NonNull Map<PeerId, Integer> load) {
+        PeerId result = null;
+        double best = Double.MAX_VALUE;
+        for (PeerId peer : candidates(session, want, true)) {
+            Integer value = load.get(peer);
+            int outstanding = value == null ? 0 : value;
+            double time = (outstanding + 1) / Math.max(scores.getScore(peer), 0.001);
+            if (time < best) {
+                result = peer;
+                best = time;
+            }
+        }
+        if (result != null) {
+            Integer value = load.get(result);
+            load.put(result, value == null ? 1 : value + 1);
+        }
+        return result;
+    }
+
+    // the peers which announced the block, and (when there are none or "all" is set)
+    // the peers which delivered other blocks of the session
+    @NonNull
+    private List<PeerId> candidates(@NonNull Session session, @NonNull Session.Want want,
+                                    boolean all) {
+        List<PeerId> candidates = new ArrayList<>();
+        for (PeerId peer : want.haves) {
+            if (!want.tried.contains(peer)) {
+                candidates.add(peer);
+            }
+        }
+        if (all || candidates.isEmpty()) {
+            for (PeerId peer : session.getPeers()) {
+                if (!want.tried.contains(peer) && !want.declined.contains(peer) &&
+                        !candidates.contains(peer)) {
+                    candidates.add(peer);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    @NonNull
+    public PeerScores getScores() {
+        return scores;
+    }
+
+    // bytes of the blocks which the peer sent although they were not wanted (any
+    // more), they were received from another peer before
+    public long getDuplicateBytes(@NonNull PeerId peer) {
+        AtomicLong bytes = duplicates.get(peer);
+        if (bytes == null) {
+            return 0;
+        }
+        return bytes.get();
+    }
+
+    @NonNull
+    public Map<PeerId, Long> getDuplicateBytes() {
+        Map<PeerId, Long> result = new HashMap<>();
+        for (Map.Entry<PeerId, AtomicLong> entry : duplicates.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    // the wants and the duplicates of the peer are forgotten (the peer is gone)
+    public void remove(@NonNull PeerId peer) {
+        outstanding.remove(peer);
+        cancels.remove(peer);
+        duplicates.remove(peer);
+    }
+
+    private void sent(@NonNull PeerId peer, @NonNull Cid cid) {
+        outstanding.computeIfAbsent(peer, key -> ConcurrentHashMap.newKeySet()).add(cid);
+    }
+
+    // the want of the peer is done (the block was received from it)
+    private void outstanding(@NonNull PeerId peer, @NonNull Cid cid) {
+        Set<Cid> cids = outstanding.get(peer);
+        if (cids != null) {
+            cids.remove(cid);
+        }
+    }
+
+    // all peers which were sent a want for the cid get a cancel, except the given one
+    private void cancelAll(@Nullable PeerId except, @NonNull Cid cid) {
+        for (Map.Entry<PeerId, Set<Cid>> entry : outstanding.entrySet()) {
+            PeerId peer = entry.getKey();
+            if (!peer.equals(except)) {
+                cancel(peer, cid);
+            }
+        }
     }
 
+    // the cancel is sent with the next batch of cancels of the peer
+    private void cancel(@NonNull PeerId peer, @NonNull Cid cid) {
+        Set<Cid> cids = outstanding.get(peer);
+        if (cids == null || !cids.remove(cid)) {
+            return;
+        }
+        cancels.computeIfAbsent(peer, key -> ConcurrentHashMap.newKeySet()).add(cid);
+        if (cancelScheduled.compareAndSet(false, true)) {
+            cancelSender.schedule(this::sendCancels, IPFS.BITSWAP_CANCEL_DELAY,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
 
-    public Block runWantHaves(@NonNull Closeable closeable, @NonNull Cid cid) throws ClosedException {
+    private void sendCancels() {
+        cancelScheduled.set(false);
+        for (PeerId peer : new ArrayList<>(cancels.keySet())) {
+            Set<Cid> cids = cancels.remove(peer);
+            if (cids == null || cids.isEmpty()) {
+                continue;
+            }
+            BitSwapMessage message = BitSwapMessage.New(false);
+            for (Cid cid : cids) {
+                message.Cancel(cid);
+            }
+            try {
+                LogUtils.debug(TAG, "send CANCEL Message " + peer.toBase58() +
+                        " " + cids.size());
+                bitSwap.writeMessage(new TimeoutCloseable(IPFS.CONNECT_TIMEOUT), peer,
+                        message, IPFS.PRIORITY_URGENT);
+            } catch (Throwable throwable) {
+                // the peer is not reachable, a cancel is not important
+                LogUtils.debug(TAG, "Cancel Peer " + peer.toBase58() + " " +
+                        throwable.getClass().getName());
+            }
+        }
+    }
 
-        matches.put(cid, new ConcurrentLinkedDeque<>());
+    private Block runWants(@NonNull Session session, @NonNull Closeable closeable,
+                           @NonNull Cid cid, @NonNull CompletableFuture<Block> future)
+            throws ClosedException {
 
         long enter = System.currentTimeMillis();
 
-        Set<PeerId> haves = new HashSet<>();
-        Set<PeerId> wants = new HashSet<>();
         priority.addAll(host.getPeers());
         whitelist.addAll(host.getRelays());
 
-        while (matches.containsKey(cid)) {
+        while (true) {
 
-            if (closeable.isClosed()) {
+            // registered again in every round, the want might have been dropped
+            // because the other callers of it were closed
+            session.want(cid, closeable);
+
+            if (future.isDone()) {
+                Block block = future.getNow(null);
+                if (block != null) {
+                    return block;
+                }
+                // cancelled by a reset
                 throw new ClosedException();
             }
 
-            for (PeerId peer : priority) {
-                if (!haves.contains(peer)) {
-                    haves.add(peer);
-                    runHaveMessage(closeable, peer, Collections.singletonList(cid));
-                }
+            // the block might have arrived before the request was registered
+            Block block = blockStore.getBlock(cid);
+            if (block != null) {
+                return block;
             }
 
-            ConcurrentLinkedDeque<PeerId> set = matches.get(cid);
-            if (set != null) {
-                PeerId peer = set.poll();
-                if (peer != null) {
-                    if (!wants.contains(peer)) {
-                        long start = System.currentTimeMillis();
-                        try {
-                            if (matches.containsKey(cid)) {
-                                sendWantsMessage(closeable, peer, Collections.singletonList(cid));
-                                whitelist.add(peer);
-                                wants.add(peer);
-                                haves.add(peer);
-                                blocker.subscribe(cid, closeable);
-                            }
-                        } catch (ClosedException closedException) {
-                            // ignore
-                        } catch (ProtocolIssue issue) {
-                            LogUtils.debug(TAG, peer.toBase58() + " " + issue);
-                        } catch (Throwable throwable) {
-                            whitelist.remove(peer);
-                            LogUtils.error(TAG, throwable);
-                        } finally {
-                            LogUtils.debug(TAG, "Match Peer " +
-                                    peer.toBase58() + " took " + (System.currentTimeMillis() - start));
-                        }
-                    }
-                }
+            if (closeable.isClosed()) {
+                throw new ClosedException();
+            }
+
+            pump(session);
+
+            block = Blocker.await(closeable, future, IPFS.WANTS_WAIT_TIMEOUT);
+            if (block != null) {
+                return block;
             }
 
             if (closeable.isClosed()) {
@@ -169,7 +585,6 @@ public class ContentManager {
             }
 
         }
-        return blockStore.getBlock(cid);
     }
 
 
@@ -178,14 +593,40 @@ public class ContentManager {
         try {
             Cid cid = block.getCid();
             LogUtils.info(TAG, "Block Received " + cid.String() + " " + peer.toBase58());
-            blockStore.putBlock(block);
+            boolean duplicate = blockStore.hasBlock(cid);
+            if (!duplicate) {
+                blockStore.putBlock(block);
+            }
 
-            if (matches.containsKey(cid)) {
-                priority.add(peer);
+            long now = System.currentTimeMillis();
+            Set<Session> touched = new HashSet<>();
+            for (Session value : getSessions()) {
+                Session.Want want = value.getWant(cid);
+                if (want != null && peer.equals(want.peer) && want.sent > 0) {
+                    scores.blockReceived(peer, now - want.sent);
+                }
+                if (value.blockReceived(peer, cid)) {
+                    priority.add(peer);
+                    touched.add(value);
+                    duplicate = false;
+                }
             }
+            if (duplicate) {
+                scores.duplicate(peer);
+                AtomicLong bytes = duplicates.computeIfAbsent(peer, key -> new AtomicLong(0));
+                bytes.addAndGet(block.getRawData().length);
+            }
+
+            blocker.release(block);
+
+            // the other peers which were asked for the block get a cancel
+            outstanding(peer, cid);
+            cancelAll(peer, cid);
 
-            matches.remove(cid);
-            blocker.release(cid);
+            // the free slots of the window are filled with queued wants
+            for (Session value : touched) {
+                pump(value);
+            }
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
         }
@@ -196,42 +637,54 @@ public class ContentManager {
     }
 
 
-    public void loadBlocks(@NonNull Closeable closeable, @NonNull List<Cid> cids) {
-
-        LogUtils.verbose(TAG, "LoadBlocks " + cids.size());
-
-        List<PeerId> handled = new ArrayList<>();
-
-        for (PeerId peer : priority) {
-            if (!handled.contains(peer)) {
-                handled.add(peer);
-                runHaveMessage(closeable, peer, cids);
+    // concurrent requests of the same block share one request, the other callers
+    // wait for the block (or request it again when the owner was closed)
+    public Block getBlock(@NonNull Session session, @NonNull Closeable closeable,
+                          @NonNull Cid cid, boolean root) throws ClosedException {
+        while (true) {
+            Block block = blockStore.getBlock(cid);
+            if (block != null) {
+                return block;
             }
-        }
-    }
-
-    public Block getBlock(@NonNull Closeable closeable, @NonNull Cid cid, boolean root) throws ClosedException {
-        try {
-            synchronized (cid.String().intern()) {
-                Block block = blockStore.getBlock(cid);
-                if (block == null) {
-                    AtomicBoolean done = new AtomicBoolean(false);
-                    LogUtils.info(TAG, "Block Get " + cid.String());
 
+            CompletableFuture<Block> future = new CompletableFuture<>();
+            CompletableFuture<Block> running = blocker.register(cid, future);
+            if (running == null) {
+                AtomicBoolean done = new AtomicBoolean(false);
+                LogUtils.info(TAG, "Block Get " + cid.String());
+                try {
                     if (root) {
                         loadProviders(() -> closeable.isClosed() || done.get(), cid);
                     }
-                    try {
-                        return runWantHaves(() -> closeable.isClosed() || done.get(), cid);
-                    } finally {
-                        done.set(true);
-                    }
+                    block = runWants(session, () -> closeable.isClosed() || done.get(),
+                            cid, future);
+                    // the block might have been found in the store, not received
+                    session.remove(cid);
+                    return block;
+                } catch (ClosedException closedException) {
+                    // nobody waits for the block any more
+                    session.remove(cid);
+                    cancelAll(null, cid);
+                    throw closedException;
+                } finally {
+                    done.set(true);
+                    blocker.unregister(cid, future);
+                    LogUtils.info(TAG, "Block Release  " + cid.String());
                 }
-                return block;
             }
-        } finally {
-            blocker.release(cid);
-            LogUtils.info(TAG, "Block Release  " + cid.String());
+
+            while (!running.isDone()) {
+                if (closeable.isClosed()) {
+                    throw new ClosedException();
+                }
+                block = Blocker.await(closeable, running, IPFS.WANTS_WAIT_TIMEOUT);
+                if (block != null) {
+                    return block;
+                }
+            }
+            if (closeable.isClosed()) {
+                throw new ClosedException();
+            }
         }
     }
 
@@ -278,7 +731,8 @@ public class ContentManager {
             MessageOuterClass.Message.Wantlist.WantType wantType =
                     MessageOuterClass.Message.Wantlist.WantType.Have;
 
-            message.AddEntry(c, priority, wantType, false);
+            // a peer which does not have the block answers with DONT_HAVE
+            message.AddEntry(c, priority, wantType, true);
 
             priority--;
         }
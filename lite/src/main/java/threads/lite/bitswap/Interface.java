@@ -16,4 +16,7 @@ public interface Interface {
     Block getBlock(@NonNull Closeable closeable, @NonNull Cid cid, boolean root) throws ClosedException;
 
     void preload(@NonNull Closeable closeable, @NonNull List<Cid> cids);
+
+    // the requests and preloads of closed callers are dropped
+    void purge();
 }
@@ -0,0 +1,79 @@
+package threads.lite.bitswap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import threads.lite.cid.PeerId;
+
+// Bandwidth of the blocks exchanged with each peer (sent by the engine and
+// received by the content manager)
+public class Ledger {
+
+    private final ConcurrentHashMap<PeerId, Entry> entries = new ConcurrentHashMap<>();
+
+    @NonNull
+    private Entry get(@NonNull PeerId peer) {
+        return entries.computeIfAbsent(peer, key -> new Entry());
+    }
+
+    public void sent(@NonNull PeerId peer, long bytes, int blocks) {
+        Entry entry = get(peer);
+        entry.bytesSent.addAndGet(bytes);
+        entry.blocksSent.addAndGet(blocks);
+        entry.lastActivity = System.currentTimeMillis();
+    }
+
+    public void received(@NonNull PeerId peer, long bytes, int blocks) {
+        Entry entry = get(peer);
+        entry.bytesReceived.addAndGet(bytes);
+        entry.blocksReceived.addAndGet(blocks);
+        entry.lastActivity = System.currentTimeMillis();
+    }
+
+    @Nullable
+    public Entry getEntry(@NonNull PeerId peer) {
+        return entries.get(peer);
+    }
+
+    @NonNull
+    public Map<PeerId, Entry> getEntries() {
+        return new HashMap<>(entries);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public static class Entry {
+        private final AtomicLong bytesSent = new AtomicLong(0);
+        private final AtomicLong bytesReceived = new AtomicLong(0);
+        private final AtomicLong blocksSent = new AtomicLong(0);
+        private final AtomicLong blocksReceived = new AtomicLong(0);
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        public long getBytesSent() {
+            return bytesSent.get();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        public long getBlocksSent() {
+            return blocksSent.get();
+        }
+
+        public long getBlocksReceived() {
+            return blocksReceived.get();
+        }
+
+        public long getLastActivity() {
+            return lastActivity;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package threads.lite.bitswap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.luminis.quic.QuicClientConnection;
+import net.luminis.quic.stream.QuicStream;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import threads.lite.IPFS;
+import threads.lite.LogUtils;
+import threads.lite.cid.PeerId;
+import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+import threads.lite.core.ConnectionIssue;
+import threads.lite.core.ProtocolIssue;
+import threads.lite.core.TimeoutIssue;
+import threads.lite.host.LiteHost;
+import threads.lite.utils.DataHandler;
+
+// Outbound bitswap stream of one peer. The stream is negotiated with the first
+// message and kept open, the messages are written by one writer in the order
+// they were queued. Messages which are queued while the writer is busy are
+// merged into one message (limited by BITSWAP_MERGE_SIZE).
+public class MessageQueue {
+    private static final String TAG = MessageQueue.class.getSimpleName();
+
+    private final LiteHost host;
+    private final PeerId peerId;
+    private final ExecutorService writers;
+    private final ArrayDeque<BitSwapMessage> queue = new ArrayDeque<>();
+    @Nullable
+    private volatile BitSwapSend stream = null;
+    private boolean writing = false;
+    private boolean closed = false;
+    private long pendingBytes = 0;
+    private volatile long used = System.currentTimeMillis();
+
+    public MessageQueue(@NonNull LiteHost host, @NonNull PeerId peerId,
+                        @NonNull ExecutorService writers) {
+        this.host = host;
+        this.peerId = peerId;
+        this.writers = writers;
+    }
+
+    // errors of the stream setup are thrown to the caller, after the setup the
+    // message is only queued
+    public void send(@NonNull Closeable closeable, @NonNull BitSwapMessage message)
+            throws ClosedException, ProtocolIssue, TimeoutIssue, ConnectionIssue {
+        used = System.currentTimeMillis();
+        BitSwapSend bitSwapSend = open(closeable);
+        synchronized (queue) {
+            if (stream != bitSwapSend) {
+                // the stream failed in the meantime, the message is lost like
+                // a message which was written to a failing stream
+                throw new ConnectionIssue();
+            }
+            queue.add(message);
+            pendingBytes += message.Size();
+            if (!writing) {
+                writing = true;
+                writers.execute(this::write);
+            }
+        }
+    }
+
+    public boolean isOpen() {
+        BitSwapSend bitSwapSend = stream;
+        return bitSwapSend != null && !bitSwapSend.isFailed();
+    }
+
+    @NonNull
+    private synchronized BitSwapSend open(@NonNull Closeable closeable)
+            throws ClosedException, ProtocolIssue, TimeoutIssue, ConnectionIssue {
+
+        BitSwapSend bitSwapSend = stream;
+        if (bitSwapSend != null && !bitSwapSend.isFailed()) {
+            return bitSwapSend;
+        }
+        synchronized (queue) {
+            if (closed) {
+                throw new ConnectionIssue();
+            }
+        }
+
+        QuicClientConnection conn = host.connectTo(closeable, peerId, IPFS.CONNECT_TIMEOUT);
+
+        if (closeable.isClosed()) {
+            throw new ClosedException();
+        }
+
+        long time = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            CompletableFuture<BitSwapSend> request = new CompletableFuture<>();
+
+            QuicStream quicStream = conn.createStream(true,
+                    IPFS.CONNECT_TIMEOUT, TimeUnit.SECONDS);
+            bitSwapSend = new BitSwapSend(peerId, quicStream, request);
+
+            bitSwapSend.writeAndFlush(DataHandler.writeToken(IPFS.STREAM_PROTOCOL));
+            bitSwapSend.writeAndFlush(DataHandler.writeToken(IPFS.BITSWAP_PROTOCOL));
+
+            request.get(IPFS.CONNECT_TIMEOUT, TimeUnit.SECONDS);
+
+            synchronized (queue) {
+                if (closed) {
+                    // the queue was removed in the meantime, the stream is not kept
+                    throw new ConnectionIssue();
+                }
+                stream = bitSwapSend;
+            }
+            success = true;
+            return bitSwapSend;
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, "" + throwable);
+            if (bitSwapSend != null) {
+                bitSwapSend.closeOutputStream();
+            }
+            if (throwable instanceof ConnectionIssue) {
+                throw new ConnectionIssue();
+            }
+            Throwable cause = throwable.getCause();
+            if (cause != null) {
+                if (cause instanceof ProtocolIssue) {
+                    throw new ProtocolIssue();
+                }
+                if (cause instanceof ConnectionIssue) {
+                    throw new ConnectionIssue();
+                }
+            }
+            if (throwable instanceof TimeoutException) {
+                throw new TimeoutIssue();
+            }
+            throw new RuntimeException(throwable);
+        } finally {
+            LogUtils.debug(TAG, "Open took " + success + " " +
+                    peerId.toBase58() + " " + (System.currentTimeMillis() - time));
+        }
+    }
+
+    private void write() {
+        while (true) {
+            BitSwapMessage message;
+            BitSwapSend bitSwapSend;
+            synchronized (queue) {
+                bitSwapSend = stream;
+                if (bitSwapSend == null) {
+                    // the queued messages are dropped, the wants are sent again
+                    // by the sessions when they time out
+                    queue.clear();
+                    pendingBytes = 0;
+                    queue.notifyAll();
+                }
+                message = queue.poll();
+                if (message == null) {
+                    writing = false;
+                    return;
+                }
+                pendingBytes -= message.Size();
+                if (!queue.isEmpty()) {
+                    BitSwapMessage merged = BitSwapMessage.New(false);
+                    merged.Merge(message);
+                    int size = message.Size();
+                    BitSwapMessage next = queue.peek();
+                    while (next != null && size + next.Size() <= IPFS.BITSWAP_MERGE_SIZE) {
+                        size += next.Size();
+                        pendingBytes -= next.Size();
+                        merged.Merge(queue.poll());
+                        next = queue.peek();
+                    }
+                    message = merged;
+                }
+            }
+
+            Objects.requireNonNull(bitSwapSend);
+            bitSwapSend.writeAndFlush(DataHandler.encode(message.ToProtoV1()));
+
+            synchronized (queue) {
+                if (bitSwapSend.isFailed()) {
+                    LogUtils.debug(TAG, "Stream failed " + peerId.toBase58());
+                    if (stream == bitSwapSend) {
+                        stream = null;
+                    }
+                }
+                queue.notifyAll();
+            }
+        }
+    }
+
+    // waits until the queued messages are smaller then limit bytes (the
+    // message which is currently written is not counted)
+    public void await(@NonNull Closeable closeable, long limit) throws ClosedException {
+        synchronized (queue) {
+            while (pendingBytes > limit && stream != null) {
+                if (closeable.isClosed()) {
+                    throw new ClosedException();
+                }
+                try {
+                    queue.wait(IPFS.WANTS_CLOSE_INTERVAL);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw new ClosedException();
+                }
+            }
+        }
+    }
+
+    // nothing was sent or is waiting to be written for the given time
+    public boolean isIdle(long now, long idle) {
+        synchronized (queue) {
+            return !writing && queue.isEmpty() && now - used > idle;
+        }
+    }
+
+    // the stream is closed, a closed queue does not open a new one
+    public void close() {
+        synchronized (queue) {
+            closed = true;
+            BitSwapSend bitSwapSend = stream;
+            stream = null;
+            queue.clear();
+            pendingBytes = 0;
+            queue.notifyAll();
+            if (bitSwapSend != null) {
+                bitSwapSend.closeOutputStream();
+            }
+        }
+    }
+}
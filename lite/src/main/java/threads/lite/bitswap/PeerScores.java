@@ -0,0 +1,145 @@
+package threads.lite.bitswap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import threads.lite.IPFS;
+import threads.lite.cid.PeerId;
+
+// Scores of the peers which were sent want-blocks. A score combines the time to
+// the first byte of a block, the yield (blocks received per want-block), the rate
+// of duplicate blocks and the rate of failures (send errors and timeouts).
+//
+// All values are exponentially weighted moving averages, in addition a score
+// decays towards the neutral values when the peer was not used for a while, so
+// a peer which failed in the past gets a chance again.
+public class PeerScores {
+
+    private static final double ALPHA = 0.25; // weight of a new sample
+    private static final double NEUTRAL_TTFB = 1000; // ms, a peer without samples
+    private final ConcurrentHashMap<PeerId, Score> scores = new ConcurrentHashMap<>();
+    private final AtomicLong selections = new AtomicLong(0);
+
+    @NonNull
+    private Score get(@NonNull PeerId peer) {
+        return scores.computeIfAbsent(peer, key -> new Score(key.getLatency()));
+    }
+
+    public void blockReceived(@NonNull PeerId peer, long ttfb) {
+        get(peer).sample(ttfb, 1.0, 0.0, 0.0);
+    }
+
+    public void duplicate(@NonNull PeerId peer) {
+        get(peer).duplicate();
+    }
+
+    public void failure(@NonNull PeerId peer) {
+        get(peer).sample(-1, 0.0, 0.0, 1.0);
+    }
+
+    public double getScore(@NonNull PeerId peer) {
+        Score score = scores.get(peer);
+        if (score == null) {
+            return new Score(peer.getLatency()).value();
+        }
+        return score.value();
+    }
+
+    public void clear() {
+        scores.clear();
+    }
+
+    // a score without samples for the given time has decayed to the neutral
+    // values anyway, it is removed
+    public void cleanup(long now, long idle) {
+        scores.values().removeIf(score -> score.isIdle(now, idle));
+    }
+
+    // the best scored peer of the candidates, every BITSWAP_EXPLORATION selection
+    // takes the least known candidate instead, so new and recovered peers are
+    // measured again
+    @Nullable
+    public PeerId select(@NonNull Collection<PeerId> candidates) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        boolean explore = candidates.size() > 1 &&
+                selections.incrementAndGet() % IPFS.BITSWAP_EXPLORATION == 0;
+        PeerId result = null;
+        double best = 0;
+        for (PeerId peer : candidates) {
+            double value;
+            if (explore) {
+                Score score = scores.get(peer);
+                value = score == null ? Double.MAX_VALUE : 1.0 / (1 + score.samples);
+            } else {
+                value = getScore(peer);
+            }
+            if (result == null || value > best) {
+                result = peer;
+                best = value;
+            }
+        }
+        return result;
+    }
+
+    private static class Score {
+        private double ttfb;
+        private double yield = 1.0;
+        private double duplicates = 0.0;
+        private double failures = 0.0;
+        private long samples = 0;
+        private long updated = System.currentTimeMillis();
+        private long sampled = System.currentTimeMillis();
+
+        Score(long latency) {
+            // the latency measured by the dht is used until a block arrived
+            this.ttfb = latency == Long.MAX_VALUE ? NEUTRAL_TTFB : latency;
+        }
+
+        // moves the values towards the neutral values, the half-life is
+        // BITSWAP_SCORE_HALF_LIFE
+        private void decay() {
+            long now = System.currentTimeMillis();
+            double factor = Math.pow(0.5, (double) (now - updated) / IPFS.BITSWAP_SCORE_HALF_LIFE);
+            ttfb = NEUTRAL_TTFB + (ttfb - NEUTRAL_TTFB) * factor;
+            yield = 1.0 + (yield - 1.0) * factor;
+            duplicates = duplicates * factor;
+            failures = failures * factor;
+            updated = now;
+        }
+
+        synchronized void sample(long time, double yieldSample, double duplicateSample,
+                                 double failureSample) {
+            decay();
+            sampled = updated;
+            if (time >= 0) {
+                ttfb = ttfb + ALPHA * (time - ttfb);
+            }
+            yield = yield + ALPHA * (yieldSample - yield);
+            duplicates = duplicates + ALPHA * (duplicateSample - duplicates);
+            failures = failures + ALPHA * (failureSample - failures);
+            samples++;
+        }
+
+        synchronized void duplicate() {
+            decay();
+            sampled = updated;
+            duplicates = duplicates + ALPHA * (1.0 - duplicates);
+        }
+
+        synchronized boolean isIdle(long now, long idle) {
+            return now - sampled > idle;
+        }
+
+        // blocks per second which can be expected from the peer
+        synchronized double value() {
+            decay();
+            return (1000.0 / (ttfb + 1)) * yield * (1.0 - duplicates / 2) * (1.0 - failures);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package threads.lite.bitswap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import threads.lite.cid.Cid;
+import threads.lite.cid.PeerId;
+import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+import threads.lite.format.Block;
+
+// A session belongs to one dag (the root cid of a Reader) and remembers the peers
+// which delivered blocks or haves of the dag, so the blocks of the same dag are
+// requested from those peers and not discovered again for every block.
+//
+// The wants of a session are sent in batches, at most "window" wants are
+// outstanding, the remaining ones are queued until a block arrives.
+//
+// Each want remembers the closeables of its callers, a want is dropped when all
+// of them are closed (e.g. the Reader which preloaded it was closed).
+public class Session implements Interface {
+
+    private final ContentManager contentManager;
+    @Nullable
+    private final Cid root;
+    private final int window;
+    private final ConcurrentSkipListSet<PeerId> peers = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<Cid, Want> wants = new ConcurrentHashMap<>();
+    private final LinkedHashMap<Cid, Closeable> queue = new LinkedHashMap<>();
+    private volatile long lastUsed = System.currentTimeMillis();
+    private volatile boolean striped = false;
+
+    public Session(@NonNull ContentManager contentManager, @Nullable Cid root, int window) {
+        this.contentManager = contentManager;
+        this.root = root;
+        this.window = window;
+    }
+
+    @Nullable
+    public Cid getRoot() {
+        return root;
+    }
+
+    @NonNull
+    public Set<PeerId> getPeers() {
+        return peers;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    private void touch() {
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    // the wants of a striped session are spread over all peers of the session
+    // (downloads), otherwise they are sent to the best peer
+    public void setStriped(boolean striped) {
+        this.striped = striped;
+    }
+
+    public boolean isStriped() {
+        return striped;
+    }
+
+    public boolean isIdle() {
+        return wants.isEmpty();
+    }
+
+    @Override
+    public void reset() {
+        synchronized (queue) {
+            queue.clear();
+        }
+        wants.clear();
+        peers.clear();
+    }
+
+    @Nullable
+    @Override
+    public Block getBlock(@NonNull Closeable closeable, @NonNull Cid cid, boolean root)
+            throws ClosedException {
+        touch();
+        return contentManager.getBlock(this, closeable, cid, root);
+    }
+
+    @Override
+    public void preload(@NonNull Closeable closeable, @NonNull List<Cid> cids) {
+        touch();
+        contentManager.preload(this, closeable, cids);
+    }
+
+    @Override
+    public void purge() {
+        contentManager.purge(this);
+    }
+
+    void queue(@NonNull Closeable closeable, @NonNull List<Cid> cids) {
+        synchronized (queue) {
+            for (Cid cid : cids) {
+                Want want = wants.get(cid);
+                if (want != null) {
+                    want.closeables.add(closeable);
+                } else {
+                    queue.put(cid, closeable);
+                }
+            }
+        }
+    }
+
+    // the wanted block is requested before all queued ones and is not limited
+    // by the window, the caller waits for it
+    void want(@NonNull Cid cid, @NonNull Closeable closeable) {
+        Closeable queued;
+        synchronized (queue) {
+            queued = queue.remove(cid);
+        }
+        Want want = wants.computeIfAbsent(cid, key -> new Want(key, closeable));
+        want.closeables.add(closeable);
+        if (queued != null) {
+            want.closeables.add(queued);
+        }
+    }
+
+    // moves queued wants into the window, queued wants of closed callers are dropped
+    void fill() {
+        synchronized (queue) {
+            Iterator<Map.Entry<Cid, Closeable>> iterator = queue.entrySet().iterator();
+            while (iterator.hasNext() && wants.size() < window) {
+                Map.Entry<Cid, Closeable> entry = iterator.next();
+                iterator.remove();
+                Closeable closeable = entry.getValue();
+                if (!closeable.isClosed()) {
+                    wants.computeIfAbsent(entry.getKey(), key -> new Want(key, closeable))
+                            .closeables.add(closeable);
+                }
+            }
+        }
+    }
+
+    // drops the queued wants and the wants of closed callers, returns the cids
+    // of the dropped wants
+    @NonNull
+    List<Cid> drop() {
+        synchronized (queue) {
+            queue.values().removeIf(Closeable::isClosed);
+        }
+        List<Cid> dropped = new ArrayList<>();
+        for (Want want : wants.values()) {
+            if (want.isClosed() && wants.remove(want.cid, want)) {
+                dropped.add(want.cid);
+            }
+        }
+        return dropped;
+    }
+
+    @NonNull
+    Collection<Want> getWants() {
+        return wants.values();
+    }
+
+    @Nullable
+    Want getWant(@NonNull Cid cid) {
+        return wants.get(cid);
+    }
+
+    boolean haveReceived(@NonNull PeerId peer, @NonNull Cid cid) {
+        Want want = wants.get(cid);
+        if (want != null) {
+            want.haves.add(peer);
+            peers.add(peer);
+            return true;
+        }
+        return false;
+    }
+
+    boolean blockReceived(@NonNull PeerId peer, @NonNull Cid cid) {
+        boolean wanted = wants.remove(cid) != null;
+        if (wanted) {
+            peers.add(peer);
+        } else {
+            synchronized (queue) {
+                wanted = queue.remove(cid) != null;
+            }
+        }
+        return wanted;
+    }
+
+    // returns the want when the peer answered a want of the session with DONT_HAVE
+    @Nullable
+    Want dontHaveReceived(@NonNull PeerId peer, @NonNull Cid cid) {
+        Want want = wants.get(cid);
+        if (want != null) {
+            want.haves.remove(peer);
+            want.declined.add(peer);
+        }
+        return want;
+    }
+
+    void remove(@NonNull Cid cid) {
+        wants.remove(cid);
+    }
+
+    void removePeer(@NonNull PeerId peer) {
+        peers.remove(peer);
+        for (Want want : wants.values()) {
+            want.haves.remove(peer);
+        }
+    }
+
+    // state of one outstanding want, a want-block is sent to exactly one peer, the
+    // want-haves to all peers which were not asked before
+    static class Want {
+        final Cid cid;
+        final Set<PeerId> haves = ConcurrentHashMap.newKeySet();
+        final Set<PeerId> asked = ConcurrentHashMap.newKeySet();
+        final Set<PeerId> tried = ConcurrentHashMap.newKeySet();
+        final Set<PeerId> declined = ConcurrentHashMap.newKeySet();
+        final Set<Closeable> closeables = ConcurrentHashMap.newKeySet();
+        volatile PeerId peer = null;
+        volatile long sent = 0;
+
+        Want(@NonNull Cid cid, @NonNull Closeable closeable) {
+            this.cid = cid;
+            this.closeables.add(closeable);
+        }
+
+        // true when all callers which wanted the block are closed
+        boolean isClosed() {
+            for (Closeable closeable : closeables) {
+                if (!closeable.isClosed()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // true when all peers which were asked answered with DONT_HAVE
+        boolean isDeclined() {
+            if (!haves.isEmpty()) {
+                return false;
+            }
+            for (PeerId peer : asked) {
+                if (!declined.contains(peer)) {
+                    return false;
+                }
+            }
+            for (PeerId peer : tried) {
+                if (!declined.contains(peer)) {
+                    return false;
+                }
+            }
+            return !declined.isEmpty();
+        }
+    }
+}
@@ -6,6 +6,18 @@ import java.io.InputStream;
 import java.security.MessageDigest;
 
 public class Prefix implements Builder {
+    // a MessageDigest is not thread safe, every thread (bitswap verifiers, importers)
+    // keeps its own instance instead of creating one per block
+    private static final ThreadLocal<MessageDigest> SHA_256 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (Throwable throwable) {
+                throw new RuntimeException(throwable);
+            }
+        }
+    };
     public long Version;
     public long Codec;
     public long MhType;
@@ -18,6 +30,12 @@ public class Prefix implements Builder {
         MhLength = mhLength;
     }
 
+    public static byte[] sha256(byte[] data) {
+        MessageDigest digest = SHA_256.get();
+        digest.reset();
+        return digest.digest(data);
+    }
+
     public static Prefix getPrefixFromBytes(byte[] buf) {
 
         try (InputStream inputStream = new ByteArrayInputStream(buf)) {
@@ -56,8 +74,7 @@ public class Prefix implements Builder {
         }
         try {
 
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = Cid.encode(digest.digest(data), MhType);
+            byte[] hash = Cid.encode(sha256(data), MhType);
 
             switch ((int) Version) {
                 case 0:
@@ -33,6 +33,7 @@ public class Adder {
         dir.setCidBuilder(builder);
         Node fnd = dir.getNode();
         dagService.Add(fnd);
+        dagService.Flush();
         return fnd;
     }
 
@@ -43,6 +44,7 @@ public class Adder {
         dir.addChild(name, link);
         Node fnd = dir.getNode();
         dagService.Add(fnd);
+        dagService.Flush();
         return fnd;
     }
 
@@ -53,6 +55,7 @@ public class Adder {
         dir.removeChild(name);
         Node fnd = dir.getNode();
         dagService.Add(fnd);
+        dagService.Flush();
         return fnd;
     }
 
@@ -91,7 +94,9 @@ public class Adder {
         DagBuilderHelper db = new DagBuilderHelper(
                 dagService, builder, splitter, RawLeaves);
 
-        return Trickle.Layout(db);
+        Node node = Trickle.Layout(db);
+        dagService.Flush();
+        return node;
     }
 
 }
@@ -34,10 +34,12 @@ public class DagReader {
     private final long size;
     private final Visitor visitor;
     private final Walker dagWalker;
-    private final NodeGetter nodeGetter;
+    private final Prefetcher nodeGetter;
     private final Set<Cid> cids = new HashSet<>();
+    private final ReadAhead readAhead = new ReadAhead(IPFS.READ_AHEAD_MIN,
+            IPFS.READ_AHEAD_MAX, IPFS.READ_AHEAD_STALL);
 
-    public DagReader(@NonNull Walker dagWalker, @NonNull NodeGetter nodeGetter, long size) {
+    public DagReader(@NonNull Walker dagWalker, @NonNull Prefetcher nodeGetter, long size) {
         this.dagWalker = dagWalker;
         this.nodeGetter = nodeGetter;
         this.size = size;
@@ -64,8 +66,10 @@ public class DagReader {
             throw new RuntimeException("type not supported");
         }
 
-        Walker dagWalker = Walker.NewWalker(NavigableIPLDNode.NewNavigableIPLDNode(node, serv));
-        return new DagReader(dagWalker, serv, size);
+        Prefetcher prefetcher = new Prefetcher(serv, IPFS.READ_AHEAD_MIN,
+                (long) IPFS.READ_AHEAD_MIN * IPFS.CHUNK_SIZE);
+        Walker dagWalker = Walker.NewWalker(NavigableIPLDNode.NewNavigableIPLDNode(node, prefetcher));
+        return new DagReader(dagWalker, prefetcher, size);
 
     }
 
@@ -73,7 +77,16 @@ public class DagReader {
         return size;
     }
 
+    // the outstanding fetches of the read ahead are cancelled
+    public void close() {
+        nodeGetter.cancel();
+    }
+
     public void Seek(@NonNull Closeable closeable, long offset) throws ClosedException {
+        if (!readAhead.seek(offset, IPFS.CHUNK_SIZE)) {
+            // random access, the blocks fetched for the former position are not needed
+            nodeGetter.cancel();
+        }
         Pair<Stack<Stage>, Long> result = dagWalker.seek(closeable, offset);
         this.atomicLeft.set(result.second.intValue());
         this.visitor.reset(result.first);
@@ -81,7 +94,16 @@ public class DagReader {
 
     @Nullable
     public byte[] loadNextData(@NonNull Closeable closeable) throws ClosedException {
+        long start = System.currentTimeMillis();
+        byte[] data = nextData(closeable);
+        if (data != null) {
+            readAhead.read(data.length, System.currentTimeMillis() - start);
+        }
+        return data;
+    }
 
+    @Nullable
+    private byte[] nextData(@NonNull Closeable closeable) throws ClosedException {
 
         int left = atomicLeft.getAndSet(0);
         if (left > 0) {
@@ -115,27 +137,30 @@ public class DagReader {
 
     public void preloadData(@NonNull Closeable closeable) throws ClosedException {
 
-        List<Cid> preloads = new ArrayList<>();
+        int window = readAhead.getWindow();
+        nodeGetter.setWindow(window, (long) window * IPFS.CHUNK_SIZE);
+
+        // the blocks of the window are fetched, the blocks of the following
+        // window are only announced
+        List<Cid> next = new ArrayList<>();
         Seeker seeker = new Seeker();
         Stack<Stage> stack = visitor.copy();
-        int runs = 0;
-
-        int min = (cids.size() / IPFS.PRELOAD) + IPFS.PRELOAD_DIST;
-
-        int maxRuns = Math.min(min, IPFS.PRELOAD);
-
-        while (runs < maxRuns) {
+        while (next.size() < 2 * window) {
             Cid cid = seeker.next(closeable, stack);
             if (cid == null) {
                 break;
             }
+            next.add(cid);
+        }
+
+        List<Cid> preloads = new ArrayList<>();
+        for (Cid cid : nodeGetter.prefetch(closeable, next)) {
             if (!cids.contains(cid)) {
                 preloads.add(cid);
             }
-            runs++;
         }
 
-        if (preloads.size() >= IPFS.PRELOAD_DIST) {
+        if (!preloads.isEmpty()) {
             cids.addAll(preloads);
             nodeGetter.preload(closeable, preloads);
         }
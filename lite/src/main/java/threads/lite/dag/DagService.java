@@ -3,6 +3,8 @@ package threads.lite.dag;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import threads.lite.cid.Cid;
@@ -34,6 +36,11 @@ public interface DagService extends NodeGetter, NodeAdder {
             public void Add(@NonNull Node nd) {
                 // nothing to do here
             }
+
+            @Override
+            public void Flush() {
+                // nothing to do here
+            }
         };
     }
 
@@ -59,6 +66,67 @@ public interface DagService extends NodeGetter, NodeAdder {
             public void Add(@NonNull Node nd) {
                 blockService.addBlock(nd);
             }
+
+            @Override
+            public void Flush() {
+                // nothing to do here
+            }
+        };
+    }
+
+    // nodes are collected and stored in batches of the given size, each batch is
+    // written within one transaction (Flush writes the remaining nodes)
+    static DagService createDagService(@NonNull BlockService blockService, int batchSize) {
+        return new DagService() {
+            private final LinkedHashMap<Cid, Block> pending = new LinkedHashMap<>();
+
+            @Override
+            @Nullable
+            public Node getNode(@NonNull Closeable closeable, @NonNull Cid cid, boolean root) throws ClosedException {
+                Block b;
+                synchronized (pending) {
+                    b = pending.get(cid);
+                }
+                if (b == null) {
+                    b = blockService.getBlock(closeable, cid, root);
+                }
+                if (b == null) {
+                    return null;
+                }
+                return Decoder.Decode(b);
+            }
+
+            @Override
+            public void preload(@NonNull Closeable closeable, @NonNull List<Cid> cids) {
+                blockService.preload(closeable, cids);
+            }
+
+            @Override
+            public void Add(@NonNull Node nd) {
+                List<Block> blocks = null;
+                synchronized (pending) {
+                    pending.put(nd.getCid(), nd);
+                    if (pending.size() >= batchSize) {
+                        blocks = new ArrayList<>(pending.values());
+                        pending.clear();
+                    }
+                }
+                if (blocks != null) {
+                    blockService.addBlocks(blocks);
+                }
+            }
+
+            @Override
+            public void Flush() {
+                List<Block> blocks;
+                synchronized (pending) {
+                    blocks = new ArrayList<>(pending.values());
+                    pending.clear();
+                }
+                if (!blocks.isEmpty()) {
+                    blockService.addBlocks(blocks);
+                }
+            }
         };
     }
 
@@ -0,0 +1,215 @@
+package threads.lite.dag;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import threads.lite.IPFS;
+import threads.lite.LogUtils;
+import threads.lite.cid.Cid;
+import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+import threads.lite.format.Node;
+import threads.lite.format.NodeGetter;
+
+// Fetches the nodes ahead of the read position in parallel. The fetched nodes
+// are kept until the walker asks for them, so they are handed out in the order
+// of the file. At most "blocks" nodes and "bytes" bytes are fetched or kept at
+// once, a seek or a close of the reader cancels all outstanding fetches, the
+// fetches which were passed by a forward seek are dropped. The fetches of all
+// readers share PREFETCH_WORKERS threads, one reader runs at most
+// PREFETCH_READER_WORKERS of them at once. A fetch which is asked for before
+// it was started is run by the caller.
+public class Prefetcher implements NodeGetter {
+    private static final String TAG = Prefetcher.class.getSimpleName();
+    private static final ThreadPoolExecutor FETCHERS = new ThreadPoolExecutor(
+            IPFS.PREFETCH_WORKERS, IPFS.PREFETCH_WORKERS, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>());
+
+    static {
+        FETCHERS.allowCoreThreadTimeOut(true);
+    }
+
+    private final NodeGetter nodeGetter;
+    private final LinkedHashMap<Cid, Fetch> fetches = new LinkedHashMap<>();
+    private AtomicBoolean cancelled = new AtomicBoolean(false);
+    private int blocks;
+    private long bytes;
+    private long pending = 0;
+    private int running = 0;
+
+    public Prefetcher(@NonNull NodeGetter nodeGetter, int blocks, long bytes) {
+        this.nodeGetter = nodeGetter;
+        this.blocks = blocks;
+        this.bytes = bytes;
+    }
+
+    public synchronized void setWindow(int blocks, long bytes) {
+        this.blocks = blocks;
+        this.bytes = bytes;
+    }
+
+    // starts the fetches of the cids until the window is full, returns the cids
+    // which were not started
+    @NonNull
+    public List<Cid> prefetch(@NonNull Closeable closeable, @NonNull List<Cid> cids) {
+        List<Cid> rest = new ArrayList<>();
+        synchronized (this) {
+            // the cids are the ones ahead of the read position, the fetches
+            // which are not among them were passed
+            Set<Cid> ahead = new HashSet<>(cids);
+            Iterator<Map.Entry<Cid, Fetch>> iterator = fetches.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Cid, Fetch> entry = iterator.next();
+                if (!ahead.contains(entry.getKey())) {
+                    iterator.remove();
+                    drop(entry.getValue());
+                }
+            }
+
+            AtomicBoolean flag = cancelled;
+            for (Cid cid : cids) {
+                if (fetches.containsKey(cid)) {
+                    continue;
+                }
+                if (fetches.size() >= blocks || pending + IPFS.CHUNK_SIZE > bytes ||
+                        running >= IPFS.PREFETCH_READER_WORKERS) {
+                    rest.add(cid);
+                    continue;
+                }
+                Fetch fetch = new Fetch();
+                fetch.closeable = () -> closeable.isClosed() || flag.get() || fetch.dropped;
+                fetch.task = () -> {
+                    if (fetch.started.compareAndSet(false, true)) {
+                        fetch(cid, fetch);
+                    }
+                };
+                fetches.put(cid, fetch);
+                pending += fetch.size;
+                running++;
+                FETCHERS.execute(fetch.task);
+            }
+        }
+        return rest;
+    }
+
+    private void drop(@NonNull Fetch fetch) {
+        pending -= fetch.size;
+        fetch.dropped = true;
+        if (fetch.started.compareAndSet(false, true)) {
+            FETCHERS.remove(fetch.task);
+            running--;
+            fetch.future.cancel(false);
+        }
+    }
+
+    private void fetch(@NonNull Cid cid, @NonNull Fetch fetch) {
+        try {
+            Node node = nodeGetter.getNode(fetch.closeable, cid, false);
+            if (node != null) {
+                synchronized (this) {
+                    // the estimated size is replaced by the real one
+                    long size = node.getData().length;
+                    if (fetches.get(cid) == fetch) {
+                        pending += size - fetch.size;
+                    }
+                    fetch.size = size;
+                }
+            }
+            fetch.future.complete(node);
+        } catch (ClosedException closedException) {
+            fetch.future.completeExceptionally(closedException);
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+            fetch.future.completeExceptionally(throwable);
+        } finally {
+            synchronized (this) {
+                running--;
+            }
+        }
+    }
+
+    // outstanding fetches are cancelled, the nodes which were fetched are dropped
+    public synchronized void cancel() {
+        cancelled.set(true);
+        cancelled = new AtomicBoolean(false);
+        for (Fetch fetch : fetches.values()) {
+            drop(fetch);
+        }
+        fetches.clear();
+        pending = 0;
+    }
+
+    @Nullable
+    @Override
+    public Node getNode(@NonNull Closeable closeable, @NonNull Cid cid, boolean root)
+            throws ClosedException {
+        Fetch fetch;
+        synchronized (this) {
+            fetch = fetches.get(cid);
+        }
+        if (fetch == null) {
+            return nodeGetter.getNode(closeable, cid, root);
+        }
+        if (fetch.started.compareAndSet(false, true)) {
+            // the fetch is still queued behind the fetches of other readers
+            synchronized (this) {
+                FETCHERS.remove(fetch.task);
+            }
+            fetch(cid, fetch);
+        }
+        try {
+            while (true) {
+                if (closeable.isClosed()) {
+                    throw new ClosedException();
+                }
+                try {
+                    return fetch.future.get(IPFS.WANTS_CLOSE_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ignore) {
+                    // the closeable is checked again
+                } catch (ExecutionException | CancellationException exception) {
+                    // the fetch failed or was cancelled, the node is fetched directly
+                    return nodeGetter.getNode(closeable, cid, root);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw new ClosedException();
+                }
+            }
+        } finally {
+            synchronized (this) {
+                if (fetches.remove(cid, fetch)) {
+                    pending -= fetch.size;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void preload(@NonNull Closeable ctx, @NonNull List<Cid> cids) {
+        nodeGetter.preload(ctx, cids);
+    }
+
+    private static class Fetch {
+        final CompletableFuture<Node> future = new CompletableFuture<>();
+        final AtomicBoolean started = new AtomicBoolean(false);
+        Closeable closeable;
+        Runnable task;
+        volatile boolean dropped;
+        long size = IPFS.CHUNK_SIZE;
+    }
+}
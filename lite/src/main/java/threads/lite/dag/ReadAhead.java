@@ -0,0 +1,80 @@
+package threads.lite.dag;
+
+// Read-ahead window of a reader in blocks, adjusted like a tcp window.
+//
+// A round ends after "window" blocks were read. When the reader had to wait for
+// the network in a round, the window is doubled as long as the throughput of the
+// round grew with the former increase (the network has headroom), otherwise it
+// grows by one block. A seek which is not a forward continuation of the former
+// reads (random access) halves the window.
+public class ReadAhead {
+
+    private final int min;
+    private final int max;
+    private final long stall;
+    private int window;
+    private long position = 0; // end of the data which was handed out
+    private long offset = 0; // offset of the last seek
+    private int blocks = 0;
+    private long bytes = 0;
+    private long waited = 0;
+    private long start = System.currentTimeMillis();
+    private double rate = 0; // bytes per ms of the former round
+
+    public ReadAhead(int min, int max, long stall) {
+        this.min = min;
+        this.max = max;
+        this.stall = stall;
+        this.window = min;
+    }
+
+    public synchronized int getWindow() {
+        return window;
+    }
+
+    // returns true when the seek continues the former reads, a seek within the
+    // data which was handed out or shortly behind it
+    public synchronized boolean seek(long offset, int blockSize) {
+        boolean sequential = offset >= this.offset && offset <= position + blockSize;
+        this.offset = offset;
+        this.position = offset;
+        if (!sequential) {
+            window = Math.max(min, window / 2);
+            rate = 0;
+            reset();
+        }
+        return sequential;
+    }
+
+    // a block of the given size was handed out, the reader waited the given
+    // time (ms) for it
+    public synchronized void read(int size, long time) {
+        position += size;
+        bytes += size;
+        blocks++;
+        if (time > stall) {
+            waited += time;
+        }
+        if (blocks < window) {
+            return;
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        double current = (double) bytes / elapsed;
+        if (waited > 0) {
+            if (rate == 0 || current > rate * 1.1) {
+                window = Math.min(max, window * 2);
+            } else {
+                window = Math.min(max, window + 1);
+            }
+        }
+        rate = current;
+        reset();
+    }
+
+    private void reset() {
+        blocks = 0;
+        bytes = 0;
+        waited = 0;
+        start = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,237 @@
+package threads.lite.dagsync;
+
+import androidx.annotation.NonNull;
+
+import com.google.protobuf.ByteString;
+
+import net.luminis.quic.QuicClientConnection;
+import net.luminis.quic.stream.QuicStream;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import bitswap.pb.MessageOuterClass;
+import threads.lite.IPFS;
+import threads.lite.LogUtils;
+import threads.lite.bitswap.PeerScores;
+import threads.lite.cid.Cid;
+import threads.lite.cid.PeerId;
+import threads.lite.cid.Prefix;
+import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+import threads.lite.core.ConnectionIssue;
+import threads.lite.core.ProtocolIssue;
+import threads.lite.core.TimeoutIssue;
+import threads.lite.format.BasicBlock;
+import threads.lite.format.Block;
+import threads.lite.format.BlockStore;
+import threads.lite.host.LiteHost;
+import threads.lite.host.QuicStreamHandler;
+import threads.lite.utils.DataHandler;
+
+// Fetches a whole dag (or the levels of it up to a depth) from one peer with one
+// request, the peer sends the blocks in traversal order (see Traversal) in
+// messages of the bitswap format. So a download needs one round trip instead of
+// one per level and window of wants.
+//
+// Every block is verified (its cid is computed and has to be the next one of the
+// traversal) and stored when it arrives. When a peer fails or does not have all
+// blocks, the next peer continues after the verified blocks.
+public class DagSync {
+
+    private static final String TAG = DagSync.class.getSimpleName();
+    // the blocks are sent by the servers and not by the thread which reads the
+    // stream, requests beyond the queue are not answered
+    private final ThreadPoolExecutor servers = new ThreadPoolExecutor(
+            IPFS.DAGSYNC_SERVER_WORKERS, IPFS.DAGSYNC_SERVER_WORKERS, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(IPFS.DAGSYNC_SERVER_QUEUE));
+    @NonNull
+    private final BlockStore blockStore;
+    @NonNull
+    private final LiteHost host;
+
+    public DagSync(@NonNull BlockStore blockStore, @NonNull LiteHost host) {
+        this.blockStore = blockStore;
+        this.host = host;
+        servers.allowCoreThreadTimeOut(true);
+    }
+
+    // sends the blocks of the requested dag which are stored locally, the stream is
+    // closed after the last block (or the first block which is missing)
+    public void serve(@NonNull PeerId peer, @NonNull QuicStreamHandler stream,
+                      @NonNull byte[] request) {
+        try {
+            Selector selector = Selector.fromBytes(request);
+            servers.execute(() -> serve(peer, stream, selector));
+        } catch (RejectedExecutionException rejected) {
+            LogUtils.debug(TAG, "Serve " + peer.toBase58() + " rejected");
+            stream.closeOutputStream();
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+            stream.closeOutputStream();
+        }
+    }
+
+    private void serve(@NonNull PeerId peer, @NonNull QuicStreamHandler stream,
+                       @NonNull Selector selector) {
+        long start = System.currentTimeMillis();
+        long sent = 0;
+        try {
+            Traversal traversal = new Traversal(selector.getRoot(), selector.getDepth());
+            MessageOuterClass.Message.Builder builder = MessageOuterClass.Message.newBuilder();
+            int size = 0;
+            Cid cid;
+            while ((cid = traversal.next()) != null) {
+                Block block = blockStore.getBlock(cid);
+                if (block == null) {
+                    break;
+                }
+                traversal.visit(block);
+                if (traversal.getCount() <= selector.getSkip()) {
+                    continue;
+                }
+                builder.addPayload(MessageOuterClass.Message.Block.newBuilder()
+                        .setData(ByteString.copyFrom(block.getRawData()))
+                        .setPrefix(ByteString.copyFrom(cid.getPrefix().bytes())).build());
+                size += block.getRawData().length;
+                sent++;
+                if (size >= IPFS.DAGSYNC_BATCH_SIZE) {
+                    stream.writeAndFlush(DataHandler.encode(builder.build()));
+                    builder = MessageOuterClass.Message.newBuilder();
+                    size = 0;
+                }
+            }
+            if (size > 0) {
+                stream.writeAndFlush(DataHandler.encode(builder.build()));
+            }
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        } finally {
+            stream.closeOutputStream();
+            LogUtils.debug(TAG, "Serve " + peer.toBase58() + " blocks " + sent +
+                    " took " + (System.currentTimeMillis() - start));
+        }
+    }
+
+    // fetches the dag from the peers (best scored first), returns true when all
+    // blocks of the dag were received
+    public boolean fetch(@NonNull Closeable closeable, @NonNull Cid root, int depth,
+                         @NonNull Collection<PeerId> peers) throws ClosedException {
+
+        PeerScores scores = host.getBitSwap().getScores();
+        List<PeerId> candidates = new ArrayList<>(peers);
+        candidates.sort((a, b) -> Double.compare(scores.getScore(b), scores.getScore(a)));
+
+        Traversal traversal = new Traversal(root, depth);
+        for (PeerId peer : candidates) {
+            if (closeable.isClosed()) {
+                throw new ClosedException();
+            }
+            try {
+                if (fetch(closeable, peer, traversal)) {
+                    return true;
+                }
+            } catch (ProtocolIssue | ConnectionIssue | TimeoutIssue issue) {
+                LogUtils.debug(TAG, "Fetch " + peer.toBase58() + " " +
+                        issue.getClass().getSimpleName());
+            }
+        }
+        synchronized (traversal) {
+            return traversal.next() == null;
+        }
+    }
+
+    private boolean fetch(@NonNull Closeable closeable, @NonNull PeerId peer,
+                          @NonNull Traversal traversal)
+            throws ClosedException, ProtocolIssue, TimeoutIssue, ConnectionIssue {
+
+        long start = System.currentTimeMillis();
+        QuicClientConnection conn = host.connect(closeable, peer, IPFS.CONNECT_TIMEOUT);
+
+        Selector selector;
+        synchronized (traversal) {
+            selector = new Selector(traversal.getRoot(), traversal.getDepth(),
+                    traversal.getCount());
+        }
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        DagSyncRequest request;
+        try {
+            QuicStream quicStream = conn.createStream(true,
+                    IPFS.CONNECT_TIMEOUT, TimeUnit.SECONDS);
+            request = new DagSyncRequest(quicStream, done,
+                    message -> received(peer, traversal, message));
+        } catch (TimeoutException timeoutException) {
+            throw new TimeoutIssue();
+        }
+
+        request.writeAndFlush(DataHandler.writeToken(IPFS.STREAM_PROTOCOL));
+        request.writeAndFlush(DataHandler.writeToken(IPFS.DAGSYNC_PROTOCOL));
+        request.writeAndFlush(DataHandler.encode(selector.toBytes()));
+        request.closeOutputStream();
+
+        try {
+            while (true) {
+                if (closeable.isClosed()) {
+                    throw new ClosedException();
+                }
+                try {
+                    done.get(IPFS.WANTS_CLOSE_INTERVAL, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException ignore) {
+                    if (System.currentTimeMillis() - request.getLastRead() >
+                            IPFS.DAGSYNC_IDLE_TIMEOUT) {
+                        throw new TimeoutIssue();
+                    }
+                } catch (ExecutionException executionException) {
+                    if (executionException.getCause() instanceof ProtocolIssue) {
+                        throw new ProtocolIssue();
+                    }
+                    throw new ConnectionIssue();
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw new ClosedException();
+                }
+            }
+        } finally {
+            if (!done.isDone()) {
+                request.closeInputStream();
+            }
+            LogUtils.debug(TAG, "Fetch " + peer.toBase58() + " blocks " +
+                    (traversal.getCount() - selector.getSkip()) +
+                    " took " + (System.currentTimeMillis() - start));
+        }
+
+        synchronized (traversal) {
+            return traversal.next() == null;
+        }
+    }
+
+    private void received(@NonNull PeerId peer, @NonNull Traversal traversal,
+                          @NonNull MessageOuterClass.Message message) throws ProtocolIssue {
+        for (MessageOuterClass.Message.Block payload : message.getPayloadList()) {
+            byte[] data = payload.getData().toByteArray();
+            Cid cid = Prefix.getPrefixFromBytes(payload.getPrefix().toByteArray()).sum(data);
+            Block block = BasicBlock.createBlockWithCid(cid, data);
+            synchronized (traversal) {
+                if (!cid.equals(traversal.next())) {
+                    // not the next block of the dag (or invalid data)
+                    throw new ProtocolIssue();
+                }
+                traversal.visit(block);
+            }
+            if (!blockStore.hasBlock(cid)) {
+                // waiting readers get the block right away
+                host.getBitSwap().blockReceived(peer, block);
+            }
+        }
+    }
+}
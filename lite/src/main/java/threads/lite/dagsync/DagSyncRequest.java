@@ -0,0 +1,76 @@
+package threads.lite.dagsync;
+
+import androidx.annotation.NonNull;
+
+import net.luminis.quic.stream.QuicStream;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import bitswap.pb.MessageOuterClass;
+import threads.lite.IPFS;
+import threads.lite.LogUtils;
+import threads.lite.core.ProtocolIssue;
+import threads.lite.host.QuicStreamHandler;
+import threads.lite.utils.DataHandler;
+
+// Reads the messages of a dagsync stream, "done" completes when the sender
+// closed the stream (all blocks it has were sent)
+public class DagSyncRequest extends QuicStreamHandler {
+
+    private static final String TAG = DagSyncRequest.class.getSimpleName();
+    @NonNull
+    private final DataHandler reader = new DataHandler(IPFS.MESSAGE_SIZE_MAX);
+    @NonNull
+    private final CompletableFuture<Void> done;
+    @NonNull
+    private final Receiver receiver;
+    private volatile long lastRead = System.currentTimeMillis();
+
+    public DagSyncRequest(@NonNull QuicStream quicStream,
+                          @NonNull CompletableFuture<Void> done,
+                          @NonNull Receiver receiver) {
+        super(quicStream);
+        this.done = done;
+        this.receiver = receiver;
+        new Thread(() -> {
+            reading();
+            done.complete(null);
+        }).start();
+    }
+
+    public void exceptionCaught(@NonNull Throwable cause) {
+        LogUtils.debug(TAG, "" + cause);
+        done.completeExceptionally(cause);
+        reader.clear();
+    }
+
+    // time of the last read, a stream without data is closed by the caller
+    public long getLastRead() {
+        return lastRead;
+    }
+
+    public void channelRead0(@NonNull byte[] msg) throws Exception {
+
+        lastRead = System.currentTimeMillis();
+        reader.load(msg);
+
+        for (String token : reader.getTokens()) {
+            if (!Objects.equals(token, IPFS.DAGSYNC_PROTOCOL) &&
+                    !Objects.equals(token, IPFS.STREAM_PROTOCOL)) {
+                LogUtils.debug(TAG, "NOT SUPPORTED " + token);
+                closeInputStream();
+                throw new ProtocolIssue();
+            }
+        }
+        // the blocks of a message are stored right away, a read does not have
+        // to end on a message boundary
+        for (byte[] message : reader.takeMessages()) {
+            receiver.received(MessageOuterClass.Message.parseFrom(message));
+        }
+    }
+
+    public interface Receiver {
+        void received(@NonNull MessageOuterClass.Message message) throws Exception;
+    }
+}
@@ -0,0 +1,89 @@
+package threads.lite.dagsync;
+
+import androidx.annotation.NonNull;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.ByteArrayOutputStream;
+
+import threads.lite.cid.Cid;
+
+// The request of a dagsync stream, the dag below "root" up to "depth" levels of
+// links (0 is the whole dag) in traversal order, the first "skip" blocks of the
+// traversal are not sent (resume of a former request).
+//
+// Wire format (protobuf compatible): 1: bytes root, 2: uint32 depth, 3: uint64 skip
+public class Selector {
+    @NonNull
+    private final Cid root;
+    private final int depth;
+    private final long skip;
+
+    public Selector(@NonNull Cid root, int depth, long skip) {
+        this.root = root;
+        this.depth = depth;
+        this.skip = skip;
+    }
+
+    @NonNull
+    public static Selector fromBytes(@NonNull byte[] data) {
+        try {
+            CodedInputStream input = CodedInputStream.newInstance(data);
+            Cid root = null;
+            int depth = 0;
+            long skip = 0;
+            int tag;
+            while ((tag = input.readTag()) != 0) {
+                switch (tag >>> 3) {
+                    case 1:
+                        root = new Cid(input.readByteArray());
+                        break;
+                    case 2:
+                        depth = input.readUInt32();
+                        break;
+                    case 3:
+                        skip = input.readUInt64();
+                        break;
+                    default:
+                        input.skipField(tag);
+                }
+            }
+            if (root == null || !root.isDefined()) {
+                throw new RuntimeException("errCidMissing");
+            }
+            return new Selector(root, depth, skip);
+        } catch (RuntimeException exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+
+    @NonNull
+    public byte[] toBytes() {
+        try (ByteArrayOutputStream buf = new ByteArrayOutputStream()) {
+            CodedOutputStream output = CodedOutputStream.newInstance(buf);
+            output.writeByteArray(1, root.bytes());
+            output.writeUInt32(2, depth);
+            output.writeUInt64(3, skip);
+            output.flush();
+            return buf.toByteArray();
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+
+    @NonNull
+    public Cid getRoot() {
+        return root;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getSkip() {
+        return skip;
+    }
+}
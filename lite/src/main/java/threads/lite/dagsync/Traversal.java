@@ -0,0 +1,94 @@
+package threads.lite.dagsync;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import threads.lite.cid.Cid;
+import threads.lite.format.Block;
+import threads.lite.format.Decoder;
+import threads.lite.format.Link;
+
+// Depth first traversal of a dag (links in order, a block which is linked more
+// than once is visited once). The sender and the receiver of a dagsync stream
+// run the same traversal, so the receiver knows which block has to come next
+// and a request can be resumed by the number of visited blocks.
+public class Traversal {
+
+    private final Deque<Step> stack = new ArrayDeque<>();
+    private final Set<Cid> visited = new HashSet<>();
+    @NonNull
+    private final Cid root;
+    private final int depth;
+    private long count = 0;
+
+    public Traversal(@NonNull Cid root, int depth) {
+        this.root = root;
+        this.depth = depth;
+        this.stack.push(new Step(root, 0));
+    }
+
+    @NonNull
+    public Cid getRoot() {
+        return root;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    // the cid of the next block, null when the traversal is finished
+    @Nullable
+    public Cid next() {
+        while (!stack.isEmpty()) {
+            Step step = stack.peek();
+            if (!visited.contains(step.cid)) {
+                return step.cid;
+            }
+            stack.pop();
+        }
+        return null;
+    }
+
+    // the block of the next cid (it has to be verified before) was visited, its
+    // links are visited next
+    public void visit(@NonNull Block block) {
+        Step step = stack.pop();
+        if (!step.cid.equals(block.getCid())) {
+            throw new IllegalStateException("unexpected block");
+        }
+        visited.add(step.cid);
+        count++;
+        if (depth > 0 && step.level >= depth) {
+            return;
+        }
+        if (step.cid.getType() != Cid.DagProtobuf) {
+            // raw leaves have no links
+            return;
+        }
+        List<Link> links = Decoder.Decode(block).getLinks();
+        for (int i = links.size() - 1; i >= 0; i--) {
+            stack.push(new Step(links.get(i).getCid(), step.level + 1));
+        }
+    }
+
+    // number of visited blocks
+    public long getCount() {
+        return count;
+    }
+
+    private static class Step {
+        final Cid cid;
+        final int level;
+
+        Step(@NonNull Cid cid, int level) {
+            this.cid = cid;
+            this.level = level;
+        }
+    }
+}
@@ -10,18 +10,33 @@ import java.util.List;
 
 
 public class BLOCKS implements Storage {
+    private static final long EXPECTED_BLOCKS = 100000;
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
     private static BLOCKS INSTANCE = null;
+    private static BlocksDatabase DATABASE = null;
     private final BlocksDatabase blocksDatabase;
+    private final CountingBloomFilter filter;
 
     private BLOCKS(BLOCKS.Builder builder) {
         this.blocksDatabase = builder.blocksDatabase;
+        this.filter = builder.filter;
     }
 
+    // the filter over all stored keys answers lookups of missing blocks without
+    // a database query, it is rebuilt from the stored keys on startup
     @NonNull
     private static BLOCKS createBlocks(@NonNull BlocksDatabase blocksDatabase) {
 
+        List<byte[]> ids = blocksDatabase.blockDao().getBlockIds();
+        CountingBloomFilter filter = CountingBloomFilter.create(
+                Math.max(EXPECTED_BLOCKS, 2L * ids.size()), FALSE_POSITIVE_PROBABILITY);
+        for (byte[] id : ids) {
+            filter.add(id);
+        }
+
         return new BLOCKS.Builder()
                 .blocksDatabase(blocksDatabase)
+                .filter(filter)
                 .build();
     }
 
@@ -30,21 +45,36 @@ public class BLOCKS implements Storage {
         if (INSTANCE == null) {
             synchronized (BLOCKS.class) {
                 if (INSTANCE == null) {
-                    BlocksDatabase blocksDatabase = Room.databaseBuilder(context, BlocksDatabase.class,
+                    INSTANCE = BLOCKS.createBlocks(getDatabase(context));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    // the database is shared with the pins, it is opened without building the
+    // filter (the pins are also used when the blocks are in the pack storage)
+    @NonNull
+    static BlocksDatabase getDatabase(@NonNull Context context) {
+
+        if (DATABASE == null) {
+            synchronized (BLOCKS.class) {
+                if (DATABASE == null) {
+                    DATABASE = Room.databaseBuilder(context, BlocksDatabase.class,
                             BlocksDatabase.class.getSimpleName()).
                             allowMainThreadQueries().
+                            addMigrations(BlocksDatabase.MIGRATION_1_2,
+                                    BlocksDatabase.MIGRATION_2_3).
                             fallbackToDestructiveMigration().build();
-
-                    INSTANCE = BLOCKS.createBlocks(blocksDatabase);
                 }
             }
         }
-        return INSTANCE;
+        return DATABASE;
     }
 
     @Nullable
     @Override
-    public byte[] getData(@NonNull String id) {
+    public byte[] getData(@NonNull byte[] id) {
         Block block = getBlock(id);
         if (block != null) {
             return block.getData();
@@ -52,10 +82,29 @@ public class BLOCKS implements Storage {
         return null;
     }
 
+    @Override
+    // only the blocks are removed, the pins in the same database are kept
     public void clear() {
-        getBlocksDatabase().clearAllTables();
+        getBlocksDatabase().blockDao().deleteBlocks();
+        filter.clear();
+    }
+
+
+    @NonNull
+    @Override
+    public List<byte[]> getKeys() {
+        return getBlocksDatabase().blockDao().getBlockIds();
     }
 
+    @Override
+    public long getTotalSize() {
+        return getBlocksDatabase().blockDao().getTotalSize();
+    }
+
+    // the database reuses the pages of deleted blocks
+    @Override
+    public void compact() {
+    }
 
     @NonNull
     public BlocksDatabase getBlocksDatabase() {
@@ -64,35 +113,54 @@ public class BLOCKS implements Storage {
 
 
     @NonNull
-    private Block createBlock(@NonNull String id, @NonNull byte[] data) {
+    private Block createBlock(@NonNull byte[] id, @NonNull byte[] data) {
 
         return Block.createBlock(id, data);
     }
 
     private void storeBlock(@NonNull Block block) {
+        filter.add(block.getId());
         getBlocksDatabase().blockDao().insertBlock(block);
     }
 
-    public void deleteBlock(@NonNull String id) {
+    // all blocks are inserted within one transaction
+    @Override
+    public void insertBlocks(@NonNull List<Block> blocks) {
+        for (Block block : blocks) {
+            filter.add(block.getId());
+        }
+        getBlocksDatabase().blockDao().insertBlocks(blocks);
+    }
+
+    public void deleteBlock(@NonNull byte[] id) {
         //LogUtils.error(TAG, "deleteBlock " +  id);
-        getBlocksDatabase().blockDao().deleteBlock(id);
+        // only keys which were stored are removed from the filter
+        if (getBlocksDatabase().blockDao().deleteBlock(id) > 0) {
+            filter.remove(id);
+        }
     }
 
     @Override
-    public int sizeBlock(@NonNull String id) {
+    public int sizeBlock(@NonNull byte[] id) {
         return (int) getBlockSize(id);
     }
 
-    public void insertBlock(@NonNull String id, @NonNull byte[] bytes) {
+    public void insertBlock(@NonNull byte[] id, @NonNull byte[] bytes) {
         //LogUtils.error(TAG, "insertBlock " +  id);
         storeBlock(createBlock(id, bytes));
     }
 
-    public boolean hasBlock(@NonNull String id) {
+    public boolean hasBlock(@NonNull byte[] id) {
+        if (!filter.mightContain(id)) {
+            return false;
+        }
         return getBlocksDatabase().blockDao().hasBlock(id);
     }
 
-    public long getBlockSize(@NonNull String id) {
+    public long getBlockSize(@NonNull byte[] id) {
+        if (!filter.mightContain(id)) {
+            return 0;
+        }
         return getBlocksDatabase().blockDao().getBlockSize(id);
     }
 
@@ -102,13 +170,17 @@ public class BLOCKS implements Storage {
     }
 
     @Nullable
-    public Block getBlock(@NonNull String id) {
+    public Block getBlock(@NonNull byte[] id) {
         //LogUtils.error(TAG, "getBlock " +  id);
+        if (!filter.mightContain(id)) {
+            return null;
+        }
         return getBlocksDatabase().blockDao().getBlock(id);
     }
 
     static class Builder {
         BlocksDatabase blocksDatabase = null;
+        CountingBloomFilter filter = null;
 
         BLOCKS build() {
 
@@ -120,5 +192,11 @@ public class BLOCKS implements Storage {
             this.blocksDatabase = blocksDatabase;
             return this;
         }
+
+        Builder filter(@NonNull CountingBloomFilter filter) {
+
+            this.filter = filter;
+            return this;
+        }
     }
 }
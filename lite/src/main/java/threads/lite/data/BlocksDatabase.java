@@ -1,10 +1,44 @@
 package threads.lite.data;
 
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
-@androidx.room.Database(entities = {Block.class}, version = 1, exportSchema = false)
+@androidx.room.Database(entities = {Block.class, Pin.class}, version = 3, exportSchema = false)
 public abstract class BlocksDatabase extends RoomDatabase {
 
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `Pin` (`cid` TEXT NOT NULL, " +
+                    "`recursive` INTEGER NOT NULL, `time` INTEGER NOT NULL, PRIMARY KEY(`cid`))");
+        }
+    };
+
+    // the keys of the blocks change from the base32 encoded string to the binary cid
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `BlockBinary` (`id` BLOB NOT NULL, " +
+                    "`data` BLOB NOT NULL, `size` INTEGER NOT NULL, PRIMARY KEY(`id`))");
+            try (Cursor cursor = database.query("SELECT id FROM Block")) {
+                while (cursor.moveToNext()) {
+                    String key = cursor.getString(0);
+                    database.execSQL("INSERT OR REPLACE INTO `BlockBinary` (id, data, size) " +
+                                    "SELECT ?, data, size FROM Block WHERE id = ?",
+                            new Object[]{Dshelp.dsKeyToBinary(key), key});
+                }
+            }
+            database.execSQL("DROP TABLE `Block`");
+            database.execSQL("ALTER TABLE `BlockBinary` RENAME TO `Block`");
+        }
+    };
+
     public abstract BlockDao blockDao();
 
+    public abstract PinDao pinDao();
+
 }
@@ -0,0 +1,111 @@
+package threads.lite.data;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+// Counting Bloom filter with 4 bit counters (two counters per byte). Keys can be
+// removed again, a counter which reached the maximum value is never decremented,
+// so the filter never answers false for a key which was added.
+public class CountingBloomFilter {
+    private static final int MAX_COUNT = 15;
+    private final byte[] counters;
+    private final int size;
+    private final int hashes;
+
+    private CountingBloomFilter(int size, int hashes) {
+        this.size = size;
+        this.hashes = hashes;
+        this.counters = new byte[(size + 1) / 2];
+    }
+
+    // creates a filter for the expected number of keys with the given false
+    // positive probability
+    @NonNull
+    public static CountingBloomFilter create(long expected, double fpp) {
+        long n = Math.max(expected, 1);
+        long m = (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int size = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 1));
+        int hashes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+        return new CountingBloomFilter(size, hashes);
+    }
+
+    private int get(int index) {
+        int value = counters[index >> 1];
+        return (index & 1) == 0 ? value & 0x0F : (value >> 4) & 0x0F;
+    }
+
+    private void set(int index, int count) {
+        int value = counters[index >> 1];
+        if ((index & 1) == 0) {
+            value = (value & 0xF0) | count;
+        } else {
+            value = (value & 0x0F) | (count << 4);
+        }
+        counters[index >> 1] = (byte) value;
+    }
+
+    private int index(long hash1, long hash2, int i) {
+        long combined = hash1 + i * hash2;
+        return (int) ((combined & Long.MAX_VALUE) % size);
+    }
+
+    // FNV-1a over the key followed by the murmur3 finalizer, does not allocate
+    private static long hash(@NonNull byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= (b & 0xFF);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // second hash for the double hashing scheme, derived from the first one
+    private static long rehash(long hash) {
+        return Long.rotateLeft(hash * 0x9E3779B97F4A7C15L, 31) | 1;
+    }
+
+    public synchronized void add(@NonNull byte[] key) {
+        long hash1 = hash(key);
+        long hash2 = rehash(hash1);
+        for (int i = 0; i < hashes; i++) {
+            int index = index(hash1, hash2, i);
+            int count = get(index);
+            if (count < MAX_COUNT) {
+                set(index, count + 1);
+            }
+        }
+    }
+
+    public synchronized void remove(@NonNull byte[] key) {
+        long hash1 = hash(key);
+        long hash2 = rehash(hash1);
+        for (int i = 0; i < hashes; i++) {
+            int index = index(hash1, hash2, i);
+            int count = get(index);
+            if (count > 0 && count < MAX_COUNT) {
+                set(index, count - 1);
+            }
+        }
+    }
+
+    public synchronized boolean mightContain(@NonNull byte[] key) {
+        long hash1 = hash(key);
+        long hash2 = rehash(hash1);
+        for (int i = 0; i < hashes; i++) {
+            if (get(index(hash1, hash2, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(counters, (byte) 0);
+    }
+}
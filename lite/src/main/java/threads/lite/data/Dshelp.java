@@ -18,4 +18,9 @@ public class Dshelp {
         return newKeyFromBinary(cid.bytes());
     }
 
+    @NonNull
+    public static byte[] dsKeyToBinary(@NonNull String key) {
+        return BaseEncoding.base32().omitPadding().decode(key.substring(1));
+    }
+
 }
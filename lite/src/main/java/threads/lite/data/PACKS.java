@@ -0,0 +1,552 @@
+package threads.lite.data;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import threads.lite.LogUtils;
+
+
+// Append-only block storage. Blocks are written sequentially into segment files,
+// an in-memory index maps each key to its record. Reads of the active segment are
+// positional reads, full segments are sealed and read from memory-mapped views.
+// Deletes append a tombstone, the space is given back by compact(). Inserted
+// blocks are forced to the disk before the insert returns. A segment which can
+// not be loaded is renamed and not used again.
+//
+// Record layout: [key length (int)][data length (int), -1 for a tombstone][key][data],
+// the key is the binary cid. The index is keyed by Id objects with a precomputed
+// hash, lookups use a reusable Id of the calling thread and do not allocate.
+public class PACKS implements Storage {
+    private static final String TAG = PACKS.class.getSimpleName();
+    private static final String PACKS_DIR = "packs";
+    private static final String SUFFIX = ".pack";
+    private static final String CORRUPT = ".corrupt";
+    private static final int HEADER_SIZE = 8;
+    private static final int TOMBSTONE = -1;
+    private static final long SEGMENT_SIZE_LIMIT = 64 * 1024 * 1024; // 64 MB
+    private static final double COMPACT_DEAD_RATIO = 0.5; // dead bytes of a compacted segment
+    private static final ThreadLocal<Id> PROBES = ThreadLocal.withInitial(Id::new);
+    private static PACKS INSTANCE = null;
+
+    private final File directory;
+    private final ConcurrentHashMap<Id, Location> index = new ConcurrentHashMap<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private final AtomicLong live = new AtomicLong(0);
+    private Segment active;
+    private int next = 0;
+
+    private PACKS(PACKS.Builder builder) {
+        this.directory = builder.directory;
+        load();
+    }
+
+    @NonNull
+    private static PACKS createPacks(@NonNull File directory) {
+
+        return new PACKS.Builder()
+                .directory(directory)
+                .build();
+    }
+
+    public static PACKS getInstance(@NonNull Context context) {
+
+        if (INSTANCE == null) {
+            synchronized (PACKS.class) {
+                if (INSTANCE == null) {
+                    File directory = new File(context.getFilesDir(), PACKS_DIR);
+                    if (!directory.exists()) {
+                        if (!directory.mkdirs()) {
+                            throw new RuntimeException("packs directory not created");
+                        }
+                    }
+                    INSTANCE = PACKS.createPacks(directory);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    // the Id of the thread for a lookup, it must not be stored in the index
+    @NonNull
+    private static Id probe(@NonNull byte[] key) {
+        return PROBES.get().set(key);
+    }
+
+    private static int recordSize(@NonNull byte[] key, int length) {
+        return HEADER_SIZE + key.length + Math.max(length, 0);
+    }
+
+    private synchronized void load() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            Arrays.sort(files, (o1, o2) -> o1.getName().compareTo(o2.getName()));
+            for (File file : files) {
+                Segment segment = null;
+                try {
+                    String name = file.getName();
+                    int id = Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+                    // the ids of new segments are above all files, also the skipped ones
+                    next = Math.max(next, id + 1);
+                    segment = new Segment(id, file);
+                    scan(segment);
+                    segments.add(segment);
+                } catch (Throwable throwable) {
+                    LogUtils.error(TAG, "skip segment " + file.getName() + " " +
+                            throwable.getMessage());
+                    if (segment != null) {
+                        discard(segment);
+                    }
+                    quarantine(file);
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            active = newSegment();
+        } else {
+            active = segments.get(segments.size() - 1);
+            for (Segment segment : segments) {
+                if (segment != active) {
+                    segment.sealed = true;
+                }
+            }
+        }
+    }
+
+    // the records of a segment which could not be read are removed from the index
+    private void discard(@NonNull Segment segment) {
+        index.values().removeIf(location -> {
+            if (location.segment == segment) {
+                live.addAndGet(-location.length);
+                return true;
+            }
+            return false;
+        });
+        segment.close();
+    }
+
+    // the file is kept for inspection, but it is not loaded again
+    private void quarantine(@NonNull File file) {
+        File target = new File(directory, file.getName() + CORRUPT);
+        if (!file.renameTo(target)) {
+            LogUtils.error(TAG, "segment not moved " + file.getName());
+        }
+    }
+
+    // rebuilds the index from the records of the segment, a record which is not
+    // completely written (e.g. process was killed during a write) is cut off
+    private void scan(@NonNull Segment segment) throws IOException {
+        long size = segment.channel.size();
+        MappedByteBuffer buffer = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int position = 0;
+        while (size - position >= HEADER_SIZE) {
+            int keyLength = buffer.getInt(position);
+            int dataLength = buffer.getInt(position + 4);
+            long end = (long) position + HEADER_SIZE + keyLength + Math.max(dataLength, 0);
+            if (keyLength <= 0 || dataLength < TOMBSTONE || end > size) {
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            buffer.position(position + HEADER_SIZE);
+            buffer.get(key);
+            Id id = new Id().set(key);
+            if (dataLength == TOMBSTONE) {
+                Location old = index.remove(id);
+                if (old != null) {
+                    old.segment.dead += recordSize(key, old.length);
+                    live.addAndGet(-old.length);
+                }
+                segment.dead += recordSize(key, TOMBSTONE);
+            } else {
+                Location old = index.put(id, new Location(segment,
+                        position + HEADER_SIZE + keyLength, dataLength));
+                live.addAndGet(dataLength);
+                if (old != null) {
+                    old.segment.dead += recordSize(key, old.length);
+                    live.addAndGet(-old.length);
+                }
+            }
+            position = (int) end;
+        }
+        if (position < size) {
+            LogUtils.error(TAG, "truncate segment " + segment.id + " at " + position);
+            segment.channel.truncate(position);
+        }
+        segment.size = position;
+    }
+
+    @NonNull
+    private Segment newSegment() {
+        try {
+            int id = next++;
+            File file = new File(directory, String.format(Locale.US, "%08d", id) + SUFFIX);
+            Segment segment = new Segment(id, file);
+            segments.add(segment);
+            return segment;
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+
+    // must be called within a synchronized block
+    private void append(@NonNull byte[] key, @Nullable byte[] data) throws IOException {
+        int length = data != null ? data.length : TOMBSTONE;
+        int size = recordSize(key, length);
+
+        if (active.size > 0 && active.size + size > SEGMENT_SIZE_LIMIT) {
+            active.channel.force(false);
+            active.sealed = true;
+            active = newSegment();
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + key.length);
+        header.putInt(key.length);
+        header.putInt(length);
+        header.put(key);
+        header.flip();
+
+        long position = active.size;
+        long written = 0;
+        if (data != null) {
+            ByteBuffer[] buffers = new ByteBuffer[]{header, ByteBuffer.wrap(data)};
+            active.channel.position(position);
+            while (written < size) {
+                written += active.channel.write(buffers);
+            }
+        } else {
+            while (written < size) {
+                written += active.channel.write(header, position + written);
+            }
+        }
+        active.size = position + size;
+
+        if (data != null) {
+            Location old = index.put(new Id().set(key), new Location(active,
+                    position + HEADER_SIZE + key.length, length));
+            live.addAndGet(length);
+            if (old != null) {
+                old.segment.dead += recordSize(key, old.length);
+                live.addAndGet(-old.length);
+            }
+        } else {
+            active.dead += size;
+        }
+    }
+
+    @Override
+    public synchronized void insertBlock(@NonNull byte[] id, @NonNull byte[] bytes) {
+        if (index.containsKey(probe(id))) {
+            return; // content addressed, nothing to do
+        }
+        try {
+            append(id, bytes);
+            active.channel.force(false);
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+
+    @Override
+    public synchronized void insertBlocks(@NonNull List<Block> blocks) {
+        try {
+            for (Block block : blocks) {
+                if (!index.containsKey(probe(block.getId()))) {
+                    append(block.getId(), block.getData());
+                }
+            }
+            active.channel.force(false);
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+
+    @Override
+    public synchronized void deleteBlock(@NonNull byte[] id) {
+        Location location = index.get(probe(id));
+        if (location == null) {
+            return;
+        }
+        try {
+            append(id, null);
+            index.remove(probe(id));
+            live.addAndGet(-location.length);
+            location.segment.dead += recordSize(id, location.length);
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+
+    // returns a read-only view on the data of the block, the view of a sealed
+    // segment is backed by the memory-mapped segment and is not copied
+    @Nullable
+    public ByteBuffer getBuffer(@NonNull byte[] id) {
+        for (int i = 0; i < 2; i++) {
+            Location location = index.get(probe(id));
+            if (location == null) {
+                return null;
+            }
+            try {
+                return location.segment.view(location.offset, location.length);
+            } catch (IOException ignore) {
+                // segment was compacted in between, look up the new location
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public byte[] getData(@NonNull byte[] id) {
+        ByteBuffer buffer = getBuffer(id);
+        if (buffer != null) {
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            return data;
+        }
+        return null;
+    }
+
+    @Override
+    public int sizeBlock(@NonNull byte[] id) {
+        Location location = index.get(probe(id));
+        if (location != null) {
+            return location.length;
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean hasBlock(@NonNull byte[] id) {
+        return index.containsKey(probe(id));
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        index.clear();
+        live.set(0);
+        next = 0;
+        active = newSegment();
+    }
+
+    @NonNull
+    @Override
+    public List<byte[]> getKeys() {
+        List<byte[]> keys = new ArrayList<>();
+        for (Id key : index.keySet()) {
+            keys.add(key.bytes);
+        }
+        return keys;
+    }
+
+    @Override
+    public long getTotalSize() {
+        return live.get();
+    }
+
+    // rewrites the live records of segments which are mostly dead into the active
+    // segment and removes the old segment files
+    @Override
+    public synchronized void compact() {
+        List<Segment> candidates = new ArrayList<>(segments);
+        candidates.remove(active);
+        for (Segment segment : candidates) {
+            if (segment.dead < segment.size * COMPACT_DEAD_RATIO) {
+                continue;
+            }
+            boolean oldest = segments.indexOf(segment) == 0;
+            try {
+                rewrite(segment, oldest);
+                // the rewritten records have to be on the disk before the only
+                // other copy is deleted
+                active.channel.force(false);
+                segments.remove(segment);
+                segment.delete();
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, throwable);
+                return;
+            }
+        }
+    }
+
+    private void rewrite(@NonNull Segment segment, boolean oldest) throws IOException {
+        MappedByteBuffer buffer = segment.channel.map(
+                FileChannel.MapMode.READ_ONLY, 0, segment.size);
+        int position = 0;
+        while (position < segment.size) {
+            int keyLength = buffer.getInt(position);
+            int dataLength = buffer.getInt(position + 4);
+            byte[] key = new byte[keyLength];
+            buffer.position(position + HEADER_SIZE);
+            buffer.get(key);
+            Id id = probe(key);
+            int offset = position + HEADER_SIZE + keyLength;
+            if (dataLength == TOMBSTONE) {
+                // a tombstone has only to survive when an older segment may still
+                // contain the deleted record
+                if (!oldest && !index.containsKey(id)) {
+                    append(key, null);
+                }
+            } else {
+                Location location = index.get(id);
+                if (location != null && location.segment == segment &&
+                        location.offset == offset) {
+                    byte[] data = new byte[dataLength];
+                    buffer.position(offset);
+                    buffer.get(data);
+                    append(key, data);
+                }
+            }
+            position = offset + Math.max(dataLength, 0);
+        }
+    }
+
+    @NonNull
+    public File getDirectory() {
+        return directory;
+    }
+
+    private static class Id {
+        byte[] bytes;
+        int hash;
+
+        // the key ends with the digest of the multihash, its last bytes are evenly
+        // distributed and are used as hash
+        @NonNull
+        Id set(@NonNull byte[] key) {
+            int length = key.length;
+            bytes = key;
+            if (length < 4) {
+                hash = Arrays.hashCode(key);
+            } else {
+                hash = (key[length - 4] & 0xff) << 24 | (key[length - 3] & 0xff) << 16 |
+                        (key[length - 2] & 0xff) << 8 | (key[length - 1] & 0xff);
+            }
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Id)) {
+                return false;
+            }
+            Id other = (Id) o;
+            return hash == other.hash && Arrays.equals(bytes, other.bytes);
+        }
+    }
+
+    private static class Location {
+        final Segment segment;
+        final long offset;
+        final int length;
+
+        Location(@NonNull Segment segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static class Segment {
+        final int id;
+        final File file;
+        final FileChannel channel;
+        volatile long size;
+        long dead;
+        volatile boolean sealed;
+        private volatile MappedByteBuffer mapped;
+
+        Segment(int id, @NonNull File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.size = channel.size();
+        }
+
+        // the active segment grows, its records are read from the channel, a
+        // sealed segment is mapped once
+        @NonNull
+        ByteBuffer view(long offset, int length) throws IOException {
+            if (!sealed) {
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new EOFException();
+                    }
+                }
+                buffer.flip();
+                return buffer.asReadOnlyBuffer();
+            }
+            MappedByteBuffer buffer = mapped;
+            if (buffer == null) {
+                synchronized (this) {
+                    buffer = mapped;
+                    if (buffer == null) {
+                        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                        mapped = buffer;
+                    }
+                }
+            }
+            ByteBuffer view = buffer.duplicate();
+            view.limit((int) (offset + length));
+            view.position((int) offset);
+            return view.slice().asReadOnlyBuffer();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, throwable);
+            }
+        }
+
+        void delete() {
+            close();
+            if (!file.delete()) {
+                LogUtils.error(TAG, "segment not deleted " + file.getName());
+            }
+        }
+    }
+
+    static class Builder {
+        File directory = null;
+
+        PACKS build() {
+
+            return new PACKS(this);
+        }
+
+        Builder directory(@NonNull File directory) {
+
+            this.directory = directory;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package threads.lite.data;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.room.Room;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import threads.lite.LogUtils;
+import threads.lite.cid.Multiaddr;
+import threads.lite.cid.PeerId;
+import threads.lite.host.AddrInfo;
+
+
+public class PEERS implements PeerStore {
+    private static final String TAG = PEERS.class.getSimpleName();
+    private static PEERS INSTANCE = null;
+    private final PeersDatabase peersDatabase;
+
+    private PEERS(PEERS.Builder builder) {
+        this.peersDatabase = builder.peersDatabase;
+    }
+
+    @NonNull
+    private static PEERS createPeers(@NonNull PeersDatabase peersDatabase) {
+
+        return new PEERS.Builder()
+                .peersDatabase(peersDatabase)
+                .build();
+    }
+
+    public static PEERS getInstance(@NonNull Context context) {
+
+        if (INSTANCE == null) {
+            synchronized (PEERS.class) {
+                if (INSTANCE == null) {
+                    PeersDatabase peersDatabase = Room.databaseBuilder(context, PeersDatabase.class,
+                            PeersDatabase.class.getSimpleName()).
+                            allowMainThreadQueries().
+                            fallbackToDestructiveMigration().build();
+
+                    INSTANCE = PEERS.createPeers(peersDatabase);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    // the multiaddrs are written as length delimited bytes
+    @NonNull
+    private static byte[] encode(@NonNull Collection<Multiaddr> addresses) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            CodedOutputStream output = CodedOutputStream.newInstance(buffer);
+            for (Multiaddr address : addresses) {
+                output.writeByteArrayNoTag(address.getBytes());
+            }
+            output.flush();
+            return buffer.toByteArray();
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+
+    @NonNull
+    private static List<Multiaddr> decode(@NonNull byte[] data) {
+        try {
+            List<Multiaddr> addresses = new ArrayList<>();
+            CodedInputStream input = CodedInputStream.newInstance(data);
+            while (!input.isAtEnd()) {
+                addresses.add(new Multiaddr(input.readByteArray()));
+            }
+            return addresses;
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+
+    @Override
+    public void storePeers(@NonNull List<AddrInfo> peers) {
+        List<Peer> entries = new ArrayList<>();
+        for (AddrInfo addrInfo : peers) {
+            PeerId peerId = addrInfo.getPeerId();
+            entries.add(Peer.createPeer(peerId.toBase58(), encode(addrInfo.asSet()),
+                    peerId.getLatency()));
+        }
+        peersDatabase.runInTransaction(() -> {
+            peersDatabase.peerDao().deletePeers();
+            peersDatabase.peerDao().insertPeers(entries);
+        });
+    }
+
+    @NonNull
+    @Override
+    public List<AddrInfo> getPeers(int limit) {
+        List<AddrInfo> peers = new ArrayList<>();
+        for (Peer peer : peersDatabase.peerDao().getPeers(limit)) {
+            try {
+                PeerId peerId = PeerId.fromBase58(peer.getId());
+                peerId.setLatency(peer.getLatency());
+                AddrInfo addrInfo = AddrInfo.create(peerId, decode(peer.getAddresses()), false);
+                if (addrInfo.hasAddresses()) {
+                    peers.add(addrInfo);
+                }
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, throwable);
+            }
+        }
+        return peers;
+    }
+
+    @Override
+    public void clear() {
+        peersDatabase.peerDao().deletePeers();
+    }
+
+    static class Builder {
+        PeersDatabase peersDatabase = null;
+
+        PEERS build() {
+
+            return new PEERS(this);
+        }
+
+        Builder peersDatabase(@NonNull PeersDatabase peersDatabase) {
+
+            this.peersDatabase = peersDatabase;
+            return this;
+        }
+    }
+}
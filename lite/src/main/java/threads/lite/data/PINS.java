@@ -0,0 +1,78 @@
+package threads.lite.data;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+import threads.lite.cid.Cid;
+
+
+public class PINS {
+    private static PINS INSTANCE = null;
+    private final BlocksDatabase blocksDatabase;
+
+    private PINS(PINS.Builder builder) {
+        this.blocksDatabase = builder.blocksDatabase;
+    }
+
+    @NonNull
+    private static PINS createPins(@NonNull BlocksDatabase blocksDatabase) {
+
+        return new PINS.Builder()
+                .blocksDatabase(blocksDatabase)
+                .build();
+    }
+
+    // pins are stored in the database of the blocks, also when the blocks itself
+    // are stored in the pack storage (the block table is not loaded then)
+    public static PINS getInstance(@NonNull Context context) {
+
+        if (INSTANCE == null) {
+            synchronized (PINS.class) {
+                if (INSTANCE == null) {
+                    BlocksDatabase blocksDatabase = BLOCKS.getDatabase(context);
+                    INSTANCE = PINS.createPins(blocksDatabase);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    public void pin(@NonNull Cid cid, boolean recursive) {
+        blocksDatabase.pinDao().insertPin(Pin.createPin(cid.String(), recursive));
+    }
+
+    public void unpin(@NonNull Cid cid) {
+        blocksDatabase.pinDao().deletePin(cid.String());
+    }
+
+    public boolean isPinned(@NonNull Cid cid) {
+        return blocksDatabase.pinDao().hasPin(cid.String());
+    }
+
+    @NonNull
+    public List<Pin> getPins() {
+        return blocksDatabase.pinDao().getPins();
+    }
+
+    public void clear() {
+        blocksDatabase.pinDao().deletePins();
+    }
+
+    static class Builder {
+        BlocksDatabase blocksDatabase = null;
+
+        PINS build() {
+
+            return new PINS(this);
+        }
+
+        Builder blocksDatabase(@NonNull BlocksDatabase blocksDatabase) {
+
+            this.blocksDatabase = blocksDatabase;
+            return this;
+        }
+    }
+}
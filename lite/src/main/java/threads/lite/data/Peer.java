@@ -0,0 +1,52 @@
+package threads.lite.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+// a peer of the routing table, the addresses are the encoded multiaddrs
+@Entity
+public class Peer {
+
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "id")
+    private final String id;
+    @NonNull
+    @ColumnInfo(name = "addresses", typeAffinity = ColumnInfo.BLOB)
+    private final byte[] addresses;
+    @ColumnInfo(name = "latency")
+    private final long latency;
+    @ColumnInfo(name = "time")
+    private final long time;
+
+    Peer(@NonNull String id, @NonNull byte[] addresses, long latency, long time) {
+        this.id = id;
+        this.addresses = addresses;
+        this.latency = latency;
+        this.time = time;
+    }
+
+    public static Peer createPeer(@NonNull String id, @NonNull byte[] addresses, long latency) {
+        return new Peer(id, addresses, latency, System.currentTimeMillis());
+    }
+
+    @NonNull
+    public String getId() {
+        return id;
+    }
+
+    @NonNull
+    public byte[] getAddresses() {
+        return addresses;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    public long getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,21 @@
+package threads.lite.data;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface PeerDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertPeers(List<Peer> peers);
+
+    @Query("SELECT * FROM Peer ORDER BY latency ASC LIMIT :limit")
+    List<Peer> getPeers(int limit);
+
+    @Query("DELETE FROM Peer")
+    void deletePeers();
+}
@@ -0,0 +1,21 @@
+package threads.lite.data;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+import threads.lite.host.AddrInfo;
+
+// peers of the routing table (with their addresses and latencies) which are kept
+// between the starts of the node
+public interface PeerStore {
+
+    // replaces the stored peers
+    void storePeers(@NonNull List<AddrInfo> peers);
+
+    // the stored peers, the fastest peers first
+    @NonNull
+    List<AddrInfo> getPeers(int limit);
+
+    void clear();
+}
@@ -0,0 +1,10 @@
+package threads.lite.data;
+
+import androidx.room.RoomDatabase;
+
+@androidx.room.Database(entities = {Peer.class}, version = 1, exportSchema = false)
+public abstract class PeersDatabase extends RoomDatabase {
+
+    public abstract PeerDao peerDao();
+
+}
@@ -0,0 +1,42 @@
+package threads.lite.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+@Entity
+public class Pin {
+
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "cid")
+    private final String cid;
+    @ColumnInfo(name = "recursive")
+    private final boolean recursive;
+    @ColumnInfo(name = "time")
+    private final long time;
+
+    Pin(@NonNull String cid, boolean recursive, long time) {
+        this.cid = cid;
+        this.recursive = recursive;
+        this.time = time;
+    }
+
+    public static Pin createPin(@NonNull String cid, boolean recursive) {
+        return new Pin(cid, recursive, System.currentTimeMillis());
+    }
+
+    @NonNull
+    public String getCid() {
+        return cid;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    public long getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,27 @@
+package threads.lite.data;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface PinDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertPin(Pin pin);
+
+    @Query("DELETE FROM Pin WHERE cid = :cid")
+    void deletePin(String cid);
+
+    @Query("SELECT 1 FROM Pin WHERE cid = :cid")
+    boolean hasPin(String cid);
+
+    @Query("SELECT * FROM Pin")
+    List<Pin> getPins();
+
+    @Query("DELETE FROM Pin")
+    void deletePins();
+}
@@ -3,16 +3,31 @@ package threads.lite.data;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.List;
 
+// blocks are keyed by the binary representation of their cid
 public interface Storage {
-    void insertBlock(@NonNull String id, @NonNull byte[] bytes);
+    void insertBlock(@NonNull byte[] id, @NonNull byte[] bytes);
+
+    void insertBlocks(@NonNull List<Block> blocks);
 
     @Nullable
-    byte[] getData(@NonNull String id);
+    byte[] getData(@NonNull byte[] id);
+
+    void deleteBlock(@NonNull byte[] id);
+
+    int sizeBlock(@NonNull byte[] id);
+
+    boolean hasBlock(@NonNull byte[] id);
+
+    void clear();
 
-    void deleteBlock(@NonNull String id);
+    @NonNull
+    List<byte[]> getKeys();
 
-    int sizeBlock(@NonNull String id);
+    // sum of the sizes of all stored blocks
+    long getTotalSize();
 
-    boolean hasBlock(@NonNull String id);
+    // gives back the space of deleted blocks, called after a garbage collection
+    void compact();
 }
@@ -3,14 +3,15 @@ package threads.lite.dht;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import threads.lite.cid.PeerId;
 
 public class Bucket {
-    private static final String TAG = Bucket.class.getSimpleName();
     private final ConcurrentHashMap<PeerId, PeerInfo> peers = new ConcurrentHashMap<>();
 
 
@@ -54,13 +55,12 @@ public class Bucket {
                 '}';
     }
 
-    public void addPeer(@NonNull PeerId peerId, boolean isReplaceable) {
-        synchronized (TAG.intern()) {
-            if (!peers.containsKey(peerId)) {
-                Bucket.PeerInfo peerInfo = new Bucket.PeerInfo(peerId, isReplaceable);
-                peers.put(peerId, peerInfo);
-            }
-        }
+    // the info of the peer in the bucket (the existing one, when it was already added)
+    @NonNull
+    public PeerInfo addPeer(@NonNull PeerId peerId, boolean isReplaceable) {
+        PeerInfo peerInfo = new PeerInfo(peerId, isReplaceable);
+        PeerInfo previous = peers.putIfAbsent(peerId, peerInfo);
+        return previous != null ? previous : peerInfo;
     }
 
     public boolean removePeer(@NonNull PeerId p) {
@@ -78,6 +78,11 @@ public class Bucket {
     }
 
 
+    @NonNull
+    public List<PeerId> getPeers() {
+        return new ArrayList<>(peers.keySet());
+    }
+
     @NonNull
     public Collection<PeerInfo> values() {
         return peers.values();
@@ -0,0 +1,170 @@
+package threads.lite.dht;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import threads.lite.IPFS;
+import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+
+// Shared pool of workers for the requests of the dht (lookups, followups, puts and
+// provides). The requests of one query run in a Group, which limits the number of
+// its running requests (alpha), the other requests wait in the group and not in the
+// queue of the pool.
+//
+// A finished or closed query cancels its group, the running requests are
+// interrupted and the waiting ones are dropped.
+public class DhtExecutor {
+
+    private static final DhtExecutor INSTANCE = new DhtExecutor(
+            IPFS.DHT_WORKERS, IPFS.DHT_QUEUE);
+    private final ThreadPoolExecutor workers;
+    private final AtomicInteger queries = new AtomicInteger(0);
+    private final AtomicInteger waiting = new AtomicInteger(0);
+
+    private DhtExecutor(int threads, int queue) {
+        this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queue),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    @NonNull
+    public static DhtExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    @NonNull
+    public Group group(int limit) {
+        return new Group(limit, true);
+    }
+
+    // a group for background work which is not bound to a query (it is not
+    // counted as active query and is never cancelled)
+    @NonNull
+    public Group background(int limit) {
+        return new Group(limit, false);
+    }
+
+    // number of queries (groups) which are not finished
+    public int getActiveQueries() {
+        return queries.get();
+    }
+
+    // number of requests which are running
+    public int getActiveRequests() {
+        return workers.getActiveCount();
+    }
+
+    // number of requests which wait for a worker (in the pool or in a group)
+    public int getQueueDepth() {
+        return workers.getQueue().size() + waiting.get();
+    }
+
+    public class Group {
+        private final int limit;
+        private final boolean query;
+        private final Deque<Runnable> pending = new ArrayDeque<>();
+        private final Set<FutureTask<Void>> running = new HashSet<>();
+        private boolean cancelled = false;
+
+        private Group(int limit, boolean query) {
+            this.limit = Math.max(1, limit);
+            this.query = query;
+            if (query) {
+                queries.incrementAndGet();
+            }
+        }
+
+        @NonNull
+        private FutureTask<Void> create(@NonNull Runnable task) {
+            return new FutureTask<Void>(task, null) {
+                @Override
+                protected void done() {
+                    finished(this);
+                }
+            };
+        }
+
+        public void execute(@NonNull Runnable task) {
+            FutureTask<Void> future;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                if (running.size() >= limit) {
+                    pending.add(task);
+                    waiting.incrementAndGet();
+                    return;
+                }
+                future = create(task);
+                running.add(future);
+            }
+            workers.execute(future);
+        }
+
+        private void finished(@NonNull FutureTask<Void> future) {
+            FutureTask<Void> next;
+            synchronized (this) {
+                running.remove(future);
+                Runnable task = cancelled ? null : pending.poll();
+                if (task == null) {
+                    notifyAll();
+                    return;
+                }
+                waiting.decrementAndGet();
+                next = create(task);
+                running.add(next);
+            }
+            workers.execute(next);
+        }
+
+        // waits until all requests of the group are finished
+        public void await(@NonNull Closeable closeable) throws ClosedException {
+            synchronized (this) {
+                while (!running.isEmpty() || !pending.isEmpty()) {
+                    if (closeable.isClosed()) {
+                        throw new ClosedException();
+                    }
+                    try {
+                        wait(IPFS.WANTS_CLOSE_INTERVAL);
+                    } catch (InterruptedException interruptedException) {
+                        Thread.currentThread().interrupt();
+                        throw new ClosedException();
+                    }
+                }
+            }
+        }
+
+        // interrupts the running requests and drops the waiting ones
+        public void cancel() {
+            List<FutureTask<Void>> futures;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                waiting.addAndGet(-pending.size());
+                pending.clear();
+                futures = new ArrayList<>(running);
+            }
+            if (query) {
+                queries.decrementAndGet();
+            }
+            for (FutureTask<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+}
@@ -25,11 +25,11 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import dht.pb.Dht;
@@ -45,6 +45,7 @@ import threads.lite.core.ClosedException;
 import threads.lite.core.ConnectionIssue;
 import threads.lite.core.ProtocolIssue;
 import threads.lite.core.RecordIssue;
+import threads.lite.core.TimeoutCloseable;
 import threads.lite.core.TimeoutIssue;
 import threads.lite.host.AddrInfo;
 import threads.lite.host.DnsResolver;
@@ -64,6 +65,14 @@ public class KadDht implements Routing {
     public final int alpha;
     public final RoutingTable routingTable;
     private final Validator validator;
+    private final ProviderCache providerCache = new ProviderCache(
+            IPFS.DHT_PROVIDER_CACHE_SIZE, IPFS.DHT_PROVIDER_TTL,
+            IPFS.DHT_PROVIDER_NEGATIVE_TTL, IPFS.DHT_PROVIDER_REFRESH);
+    private final DhtExecutor.Group refreshes = DhtExecutor.getInstance().background(
+            IPFS.DHT_PROVIDER_REFRESHES);
+    private final ScheduledExecutorService storer =
+            Executors.newSingleThreadScheduledExecutor();
+    private final AtomicBoolean seeded = new AtomicBoolean(false);
 
 
     public KadDht(@NonNull LiteHost host, @NonNull Validator validator,
@@ -80,6 +89,58 @@ public class KadDht implements Routing {
 
     @Override
     public void bootstrap() {
+        // the peers of the last run are known without a dns resolution of the
+        // bootstrap nodes, when there are enough of them the bootstrap nodes are
+        // added in the background
+        if (seeded.compareAndSet(false, true)) {
+            int count = seedPeers();
+            storer.scheduleWithFixedDelay(this::storePeers, IPFS.PEER_STORE_INTERVAL,
+                    IPFS.PEER_STORE_INTERVAL, TimeUnit.MILLISECONDS);
+            if (count >= bucketSize) {
+                storer.execute(this::bootstrapNodes);
+                return;
+            }
+        }
+        bootstrapNodes();
+    }
+
+    // only peers with addresses are stored (see storePeers), so every stored peer
+    // can be connected and counts as seed
+    private int seedPeers() {
+        int count = 0;
+        try {
+            for (AddrInfo addrInfo : host.getPeerStore().getPeers(IPFS.PEER_STORE_LIMIT)) {
+                host.addToAddressBook(addrInfo);
+                peerFound(addrInfo.getPeerId(), true);
+                count++;
+            }
+            LogUtils.debug(TAG, "Seeded peers " + count);
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
+        return count;
+    }
+
+    @Override
+    public void storePeers() {
+        try {
+            List<AddrInfo> peers = new ArrayList<>();
+            for (PeerId peerId : routingTable.getPeers()) {
+                AddrInfo addrInfo = AddrInfo.create(peerId, host.getAddresses(peerId), false);
+                if (addrInfo.hasAddresses()) {
+                    peers.add(addrInfo);
+                }
+            }
+            if (!peers.isEmpty()) {
+                host.getPeerStore().storePeers(peers);
+            }
+            LogUtils.debug(TAG, "Stored peers " + peers.size());
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
+    }
+
+    private void bootstrapNodes() {
         // Fill routing table with currently connected peers that are DHT servers
         synchronized (TAG.intern()) {
             try {
@@ -194,16 +255,20 @@ public class KadDht implements Routing {
                 .setTimeReceived(format).build();
 
         ConcurrentSkipListSet<PeerId> handled = new ConcurrentSkipListSet<>();
+        DhtExecutor.Group group = DhtExecutor.getInstance().group(alpha);
         try {
             getClosestPeers(ctx, key, addrInfo -> {
                 PeerId peerId = addrInfo.getPeerId();
                 if (!handled.contains(peerId)) {
                     handled.add(peerId);
-                    ExecutorService service = Executors.newSingleThreadExecutor();
-                    service.execute(() -> putValueToPeer(ctx, addrInfo.getPeerId(), rec));
+                    group.execute(() -> putValueToPeer(ctx, addrInfo.getPeerId(), rec));
                 }
             });
+            group.await(ctx);
+        } catch (ClosedException ignore) {
+            // nothing to do here
         } finally {
+            group.cancel();
             LogUtils.verbose(TAG, "Finish putValue at " + (System.currentTimeMillis() - start));
         }
 
@@ -243,6 +308,52 @@ public class KadDht implements Routing {
 
         byte[] key = cid.getHash();
 
+        List<AddrInfo> cached = providerCache.getProviders(key);
+        if (cached == null) {
+            lookupProviders(closeable, providers, cid);
+            return;
+        }
+
+        LogUtils.debug(TAG, "findProviders cached " + cached.size() + " for " + cid.String());
+        for (AddrInfo addrInfo : cached) {
+            host.addToAddressBook(addrInfo);
+            providers.peer(addrInfo.getPeerId());
+        }
+
+        // new providers of the refresh are reported while the caller is interested
+        if (providerCache.refresh(key)) {
+            refreshes.execute(() -> {
+                try {
+                    lookupProviders(new TimeoutCloseable(IPFS.DHT_PROVIDER_REFRESH_TIMEOUT),
+                            peerId -> {
+                                if (!closeable.isClosed()) {
+                                    providers.peer(peerId);
+                                }
+                            }, cid);
+                } catch (Throwable throwable) {
+                    LogUtils.error(TAG, throwable);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void removeProvider(@NonNull Cid cid, @NonNull PeerId peerId) {
+        if (cid.isDefined()) {
+            providerCache.remove(cid.getHash(), peerId);
+        }
+    }
+
+    @Override
+    public void removeProvider(@NonNull PeerId peerId) {
+        providerCache.remove(peerId);
+    }
+
+    private void lookupProviders(@NonNull Closeable closeable, @NonNull Providers providers,
+                                 @NonNull Cid cid) {
+
+        byte[] key = cid.getHash();
+
         long start = System.currentTimeMillis();
 
         try {
@@ -287,6 +398,8 @@ public class KadDht implements Routing {
                             !addrInfo.hasAddresses() &&
                             foundNumber == IPFS.THRESHOLD_FIND_PROVIDERS)) {
                         LogUtils.debug(TAG, "findProviders " + peerId);
+                        providerCache.add(key, AddrInfo.create(peerId,
+                                host.getAddresses(peerId), false));
                         providers.peer(peerId);
                     }
                 }
@@ -295,6 +408,7 @@ public class KadDht implements Routing {
 
             }, closeable::isClosed, false);
         } finally {
+            providerCache.finished(key, !closeable.isClosed());
             LogUtils.debug(TAG, "Finish findProviders at " +
                     (System.currentTimeMillis() - start));
         }
@@ -343,14 +457,21 @@ public class KadDht implements Routing {
         final Dht.Message mes = makeProvRecord(key);
 
         ConcurrentSkipListSet<PeerId> handled = new ConcurrentSkipListSet<>();
-        getClosestPeers(closeable, key, addrInfo -> {
-            PeerId peerId = addrInfo.getPeerId();
-            if (!handled.contains(peerId)) {
-                handled.add(peerId);
-                ExecutorService service = Executors.newSingleThreadExecutor();
-                service.execute(() -> sendMessage(closeable, peerId, mes));
-            }
-        });
+        DhtExecutor.Group group = DhtExecutor.getInstance().group(alpha);
+        try {
+            getClosestPeers(closeable, key, addrInfo -> {
+                PeerId peerId = addrInfo.getPeerId();
+                if (!handled.contains(peerId)) {
+                    handled.add(peerId);
+                    group.execute(() -> sendMessage(closeable, peerId, mes));
+                }
+            });
+            group.await(closeable);
+        } catch (ClosedException ignore) {
+            // nothing to do here
+        } finally {
+            group.cancel();
+        }
 
     }
 
@@ -359,8 +480,10 @@ public class KadDht implements Routing {
                              @NonNull Dht.Message message) {
         long time = System.currentTimeMillis();
         QuicClientConnection conn;
+        boolean acquired = false;
         try {
-            conn = host.connect(closeable, peerId, IPFS.CONNECT_TIMEOUT);
+            conn = host.acquire(closeable, peerId, IPFS.CONNECT_TIMEOUT);
+            acquired = true;
 
             if (closeable.isClosed()) {
                 return;
@@ -380,17 +503,22 @@ public class KadDht implements Routing {
             stream.get(IPFS.CONNECT_TIMEOUT, TimeUnit.SECONDS);
 
 
-        } catch (ClosedException | ConnectionIssue | TimeoutException ignore) {
+        } catch (ClosedException | ConnectionIssue | TimeoutException |
+                InterruptedException ignore) {
             // ignore
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
         } finally {
-            host.disconnect(peerId);
+            if (acquired) {
+                host.release(peerId);
+            }
             LogUtils.debug(TAG, "Send took " + (System.currentTimeMillis() - time));
         }
     }
 
 
+    // several requests to the same peer share its connection (each one with its
+    // own stream), the connection is kept open for the following requests
     private Dht.Message sendRequest(@NonNull Closeable closeable, @NonNull PeerId peerId,
                                     @NonNull Dht.Message message)
             throws ClosedException, ProtocolIssue, TimeoutIssue, ConnectionIssue {
@@ -398,61 +526,69 @@ public class KadDht implements Routing {
         long time = System.currentTimeMillis();
         boolean success = false;
 
-        QuicClientConnection conn = host.connect(closeable, peerId, IPFS.CONNECT_TIMEOUT);
+        QuicClientConnection conn = host.acquire(closeable, peerId, IPFS.CONNECT_TIMEOUT);
 
+        if (closeable.isClosed()) {
+            host.release(peerId);
+            throw new ClosedException();
+        }
 
-        synchronized (peerId.toBase58().intern()) {
-
-            if (closeable.isClosed()) {
-                throw new ClosedException();
-            }
-
-            try {
-                time = System.currentTimeMillis();
+        boolean broken = false;
+        try {
+            time = System.currentTimeMillis();
 
-                CompletableFuture<Dht.Message> request = new CompletableFuture<>();
+            CompletableFuture<Dht.Message> request = new CompletableFuture<>();
 
-                QuicStream quicStream = conn.createStream(true,
-                        IPFS.DHT_REQUEST_READ_TIMEOUT, TimeUnit.SECONDS);
+            QuicStream quicStream = conn.createStream(true,
+                    IPFS.DHT_REQUEST_READ_TIMEOUT, TimeUnit.SECONDS);
 
-                KadDhtRequest dhtRequest = new KadDhtRequest(quicStream, request);
+            KadDhtRequest dhtRequest = new KadDhtRequest(quicStream, request);
 
-                // TODO quicStream.updatePriority(new QuicStreamPriority(IPFS.PRIORITY_NORMAL, false));
+            // TODO quicStream.updatePriority(new QuicStreamPriority(IPFS.PRIORITY_NORMAL, false));
 
 
-                dhtRequest.writeAndFlush(DataHandler.writeToken(IPFS.STREAM_PROTOCOL));
-                dhtRequest.writeAndFlush(DataHandler.writeToken(IPFS.DHT_PROTOCOL));
-                dhtRequest.writeAndFlush(DataHandler.encode(message));
-                dhtRequest.closeOutputStream();
+            dhtRequest.writeAndFlush(DataHandler.writeToken(IPFS.STREAM_PROTOCOL));
+            dhtRequest.writeAndFlush(DataHandler.writeToken(IPFS.DHT_PROTOCOL));
+            dhtRequest.writeAndFlush(DataHandler.encode(message));
+            dhtRequest.closeOutputStream();
 
 
-                Dht.Message msg = request.get(IPFS.DHT_REQUEST_READ_TIMEOUT, TimeUnit.SECONDS);
-                Objects.requireNonNull(msg);
-                success = true;
-                peerId.setLatency(System.currentTimeMillis() - time);
+            Dht.Message msg = request.get(IPFS.DHT_REQUEST_READ_TIMEOUT, TimeUnit.SECONDS);
+            Objects.requireNonNull(msg);
+            success = true;
+            peerId.setLatency(System.currentTimeMillis() - time);
 
-                return msg;
+            return msg;
 
-            } catch (TimeoutException exception) {
-                throw new TimeoutIssue();
-            } catch (Throwable throwable) {
-                Throwable cause = throwable.getCause();
-                if (cause != null) {
-                    LogUtils.info(TAG, cause.getClass().getSimpleName());
-                    if (cause instanceof ProtocolIssue) {
-                        throw new ProtocolIssue();
-                    }
-                    if (cause instanceof ProtocolException) {
-                        throw new ConnectionIssue();
-                    }
+        } catch (TimeoutException exception) {
+            throw new TimeoutIssue();
+        } catch (InterruptedException interruptedException) {
+            // the query was cancelled, the connection is fine
+            Thread.currentThread().interrupt();
+            throw new ClosedException();
+        } catch (Throwable throwable) {
+            Throwable cause = throwable.getCause();
+            if (cause != null) {
+                LogUtils.info(TAG, cause.getClass().getSimpleName());
+                if (cause instanceof ProtocolIssue) {
+                    throw new ProtocolIssue();
                 }
-                LogUtils.error(TAG, throwable);
-                throw new ConnectionIssue();
-            } finally {
+                if (cause instanceof ProtocolException) {
+                    broken = true;
+                    throw new ConnectionIssue();
+                }
+            }
+            LogUtils.error(TAG, throwable);
+            broken = true;
+            throw new ConnectionIssue();
+        } finally {
+            if (broken) {
                 host.disconnect(peerId);
-                LogUtils.warning(TAG, "Request " + success + " took " +
-                        (System.currentTimeMillis() - time));
+            } else {
+                host.release(peerId);
             }
+            LogUtils.warning(TAG, "Request " + success + " took " +
+                    (System.currentTimeMillis() - time));
         }
     }
 
@@ -605,18 +741,16 @@ public class KadDht implements Routing {
         }
 
         if (runFollowUp) {
-            List<Future<Void>> futures = new ArrayList<>();
-            ExecutorService executor = Executors.newFixedThreadPool(4);
-            for (PeerId peerId : queryPeers) {
-                Future<Void> future = executor.submit(() -> invokeQuery(closeable, queryFn, peerId));
-                futures.add(future);
-            }
-            for (Future<Void> future : futures) {
-                try {
-                    future.get();
-                } catch (Throwable ignore) {
-                    // ignore
+            DhtExecutor.Group group = DhtExecutor.getInstance().group(alpha);
+            try {
+                for (PeerId peerId : queryPeers) {
+                    group.execute(() -> invokeQuery(closeable, queryFn, peerId));
                 }
+                group.await(closeable);
+            } catch (ClosedException ignore) {
+                // ignore
+            } finally {
+                group.cancel();
             }
         }
     }
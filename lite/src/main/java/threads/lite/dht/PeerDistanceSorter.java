@@ -26,7 +26,7 @@ public class PeerDistanceSorter extends ArrayList<PeerDistanceSorter.PeerDistanc
     }
 
     public void appendPeer(@NonNull PeerId peerId, @NonNull ID id) {
-        this.add(new PeerDistance(peerId, ID.xor(target, id)));
+        this.add(new PeerDistance(peerId, id, target));
     }
 
     public void appendPeersFromList(@NonNull Bucket bucket) {
@@ -45,13 +45,16 @@ public class PeerDistanceSorter extends ArrayList<PeerDistanceSorter.PeerDistanc
         return list;
     }
 
+    // the distance to the target is compared in place (no xor of the ids)
     public static class PeerDistance implements Comparable<PeerDistance> {
         private final PeerId peerId;
-        private final ID distance;
+        private final ID id;
+        private final ID target;
 
-        protected PeerDistance(@NonNull PeerId peerId, @NonNull ID distance) {
+        protected PeerDistance(@NonNull PeerId peerId, @NonNull ID id, @NonNull ID target) {
             this.peerId = peerId;
-            this.distance = distance;
+            this.id = id;
+            this.target = target;
         }
 
         @NonNull
@@ -59,13 +62,13 @@ public class PeerDistanceSorter extends ArrayList<PeerDistanceSorter.PeerDistanc
         public String toString() {
             return "PeerDistance{" +
                     "peerId=" + peerId +
-                    ", distance=" + distance +
+                    ", id=" + id +
                     '}';
         }
 
         @Override
         public int compareTo(@NonNull PeerDistance o) {
-            return this.distance.compareTo(o.distance);
+            return Util.CompareDistance(id.data, o.id.data, target.data);
         }
 
         @NonNull
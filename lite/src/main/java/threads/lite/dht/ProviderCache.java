@@ -0,0 +1,156 @@
+package threads.lite.dht;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import threads.lite.cid.PeerId;
+import threads.lite.host.AddrInfo;
+
+// Providers (with their addresses) found by the dht, keyed by the multihash of the
+// content. A lookup of a content with cached providers gets them without a walk of
+// the dht. A lookup which found no providers is remembered for a short time
+// (negative entry), so a missing content is not looked up again and again.
+//
+// Providers expire after the ttl, the least recently used keys are evicted when the
+// cache is full. A provider which does not deliver the content (or can not be
+// connected) is removed, when no provider is left the next lookup walks the dht.
+public class ProviderCache {
+
+    private final LinkedHashMap<ByteString, Entry> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private final int capacity;
+    private final long ttl;
+    private final long negativeTtl;
+    private final long refresh;
+
+    public ProviderCache(int capacity, long ttl, long negativeTtl, long refresh) {
+        this.capacity = capacity;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.refresh = refresh;
+    }
+
+    @NonNull
+    private Entry entry(@NonNull ByteString key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+            Iterator<ByteString> iterator = entries.keySet().iterator();
+            while (entries.size() > capacity && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return entry;
+    }
+
+    public synchronized void add(@NonNull byte[] key, @NonNull AddrInfo addrInfo) {
+        Entry entry = entry(ByteString.copyFrom(key));
+        entry.providers.put(addrInfo.getPeerId(),
+                new Provider(addrInfo, System.currentTimeMillis() + ttl));
+        entry.missing = 0;
+    }
+
+    // the cached providers, an empty list when no providers were found recently and
+    // null when nothing is known (a lookup is required)
+    @Nullable
+    public synchronized List<AddrInfo> getProviders(@NonNull byte[] key) {
+        Entry entry = entries.get(ByteString.copyFrom(key));
+        if (entry == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        entry.providers.values().removeIf(provider -> provider.expires < now);
+        if (!entry.providers.isEmpty()) {
+            List<AddrInfo> result = new ArrayList<>();
+            for (Provider provider : entry.providers.values()) {
+                result.add(provider.addrInfo);
+            }
+            return result;
+        }
+        if (entry.missing > now) {
+            return new ArrayList<>();
+        }
+        return null;
+    }
+
+    // true when the providers of the key should be looked up in the background,
+    // the caller has to call finished when the lookup is done
+    public synchronized boolean refresh(@NonNull byte[] key) {
+        Entry entry = entries.get(ByteString.copyFrom(key));
+        if (entry == null || entry.refreshing || entry.providers.isEmpty()) {
+            return false;
+        }
+        if (System.currentTimeMillis() - entry.updated < refresh) {
+            return false;
+        }
+        entry.refreshing = true;
+        return true;
+    }
+
+    // a lookup of the key is done, a completed lookup (not closed before) without
+    // providers leaves a negative entry
+    public synchronized void finished(@NonNull byte[] key, boolean completed) {
+        ByteString hash = ByteString.copyFrom(key);
+        if (!completed) {
+            Entry entry = entries.get(hash);
+            if (entry != null) {
+                entry.refreshing = false;
+            }
+            return;
+        }
+        Entry entry = entry(hash);
+        entry.refreshing = false;
+        long now = System.currentTimeMillis();
+        entry.updated = now;
+        if (entry.providers.isEmpty()) {
+            entry.missing = now + negativeTtl;
+        }
+    }
+
+    // the peer does not have the content of the key (any more)
+    public synchronized void remove(@NonNull byte[] key, @NonNull PeerId peerId) {
+        Entry entry = entries.get(ByteString.copyFrom(key));
+        if (entry != null) {
+            entry.providers.remove(peerId);
+        }
+    }
+
+    // the peer is not reachable, it is removed as provider of all keys
+    public synchronized void remove(@NonNull PeerId peerId) {
+        for (Entry entry : entries.values()) {
+            entry.providers.remove(peerId);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static class Provider {
+        final AddrInfo addrInfo;
+        final long expires;
+
+        Provider(@NonNull AddrInfo addrInfo, long expires) {
+            this.addrInfo = addrInfo;
+            this.expires = expires;
+        }
+    }
+
+    private static class Entry {
+        final Map<PeerId, Provider> providers = new HashMap<>();
+        long updated = System.currentTimeMillis();
+        long missing = 0;
+        boolean refreshing = false;
+    }
+}
@@ -11,10 +11,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import threads.lite.IPFS;
 import threads.lite.LogUtils;
 import threads.lite.cid.PeerId;
 import threads.lite.core.Closeable;
@@ -50,7 +52,7 @@ public class Query {
         this.queryFn = queryFn;
         this.stopFn = stopFn;
         this.alpha = dht.alpha;
-        this.queue = new ArrayBlockingQueue<>(alpha);
+        this.queue = new LinkedBlockingQueue<>();
     }
 
 
@@ -122,50 +124,58 @@ public class Query {
 
     public void run(@NonNull Closeable ctx) throws ClosedException, InterruptedException {
 
-        QueryUpdate update = new QueryUpdate();
-        update.heard.addAll(seedPeers);
-        queue.offer(update);
+        // the requests of the query run in the shared dht pool, at most alpha at once
+        DhtExecutor.Group group = DhtExecutor.getInstance().group(alpha);
+        try {
+            QueryUpdate update = new QueryUpdate();
+            update.heard.addAll(seedPeers);
+            queue.offer(update);
 
-        while (true) {
+            while (true) {
 
-            QueryUpdate current = queue.take();
+                QueryUpdate current = queue.poll(IPFS.WANTS_CLOSE_INTERVAL, TimeUnit.MILLISECONDS);
 
-            if (ctx.isClosed()) {
-                throw new ClosedException();
-            }
+                if (ctx.isClosed()) {
+                    throw new ClosedException();
+                }
+                if (current == null) {
+                    continue;
+                }
 
-            updateState(current);
-
-            // calculate the maximum number of queries we could be spawning.
-            // Note: NumWaiting will be updated in spawnQuery
-            int maxNumQueriesToSpawn = alpha - queryPeers.NumWaiting();
-
-            // termination is triggered on end-of-lookup conditions or starvation of unused peers
-            // it also returns the peers we should query next for a maximum of `maxNumQueriesToSpawn` peers.
-            Pair<Boolean, List<PeerId>> result = isReadyToTerminate(maxNumQueriesToSpawn);
-
-            if (!result.first) {
-
-                // try spawning the queries, if there are no available peers to query then we won't spawn them
-                for (PeerId queryPeer : result.second) {
-                    queryPeers.setState(queryPeer, PeerState.PeerWaiting);
-                    new Thread(() -> {
-                        try {
-                            queryPeer(ctx, queryPeer);
-                        } catch (ClosedException ignore) {
-                            queue.clear();
-                            queue.offer(new QueryUpdate());
-                            // nothing to do here (works as expected)
-                        } catch (Throwable throwable) {
-                            // not expected exception
-                            LogUtils.error(TAG, throwable);
-                        }
-                    }).start();
+                updateState(current);
+
+                // calculate the maximum number of queries we could be spawning.
+                // Note: NumWaiting will be updated in spawnQuery
+                int maxNumQueriesToSpawn = alpha - queryPeers.NumWaiting();
+
+                // termination is triggered on end-of-lookup conditions or starvation of unused peers
+                // it also returns the peers we should query next for a maximum of `maxNumQueriesToSpawn` peers.
+                Pair<Boolean, List<PeerId>> result = isReadyToTerminate(maxNumQueriesToSpawn);
+
+                if (!result.first) {
+
+                    // try spawning the queries, if there are no available peers to query then we won't spawn them
+                    for (PeerId queryPeer : result.second) {
+                        queryPeers.setState(queryPeer, PeerState.PeerWaiting);
+                        group.execute(() -> {
+                            try {
+                                queryPeer(ctx, queryPeer);
+                            } catch (ClosedException ignore) {
+                                // nothing to do here (works as expected)
+                            } catch (Throwable throwable) {
+                                // not expected exception
+                                LogUtils.error(TAG, throwable);
+                            }
+                        });
+                    }
+                } else {
+                    LogUtils.warning(TAG, "Termination no succes");
+                    break;
                 }
-            } else {
-                LogUtils.warning(TAG, "Termination no succes");
-                break;
             }
+        } finally {
+            // the requests which are still running are not needed anymore
+            group.cancel();
         }
     }
 
@@ -198,6 +208,10 @@ public class Query {
         } catch (ClosedException closedException) {
             throw closedException;
         } catch (ProtocolIssue | ConnectionIssue ignore) {
+            if (Thread.currentThread().isInterrupted()) {
+                // the query was cancelled, the peer is not the issue
+                throw new ClosedException();
+            }
             dht.removeFromRouting(queryPeer);
             QueryUpdate update = new QueryUpdate();
             update.unreachable.add(queryPeer);
@@ -207,6 +221,9 @@ public class Query {
             update.unreachable.add(queryPeer);
             queue.offer(update);
         } catch (Throwable throwable) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new ClosedException();
+            }
             LogUtils.error(TAG, throwable);
 
             dht.removeFromRouting(queryPeer);
@@ -22,9 +22,18 @@ public interface Routing {
 
     void provide(@NonNull Closeable closeable, @NonNull Cid cid);
 
+    // the peer did not deliver the content, it is no cached provider of it any more
+    void removeProvider(@NonNull Cid cid, @NonNull PeerId peerId);
+
+    // the peer could not be connected, it is no cached provider of any content
+    void removeProvider(@NonNull PeerId peerId);
+
 
     void bootstrap();
 
+    // the peers of the routing table are kept for the next start
+    void storePeers();
+
 
     interface Providers {
         void peer(@NonNull PeerId peerId);
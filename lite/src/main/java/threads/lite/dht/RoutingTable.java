@@ -2,8 +2,6 @@ package threads.lite.dht;
 
 import androidx.annotation.NonNull;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
@@ -17,6 +15,8 @@ public class RoutingTable {
     private final ID local;  // ID of the local peer
     private final ConcurrentHashMap<Integer, Bucket> buckets = new ConcurrentHashMap<>();
     private final int bucketSize;
+    // all peers of the buckets, replaced on every change (readers take no lock)
+    private volatile XorTrie trie = XorTrie.EMPTY;
 
 
     public RoutingTable(int bucketSize, @NonNull ID local) {
@@ -25,64 +25,19 @@ public class RoutingTable {
     }
 
 
-    // NearestPeers returns a list of the 'count' closest peers to the given ID
+    // NearestPeers returns a list of the 'count' closest peers to the given ID,
+    // sorted by their distance (the trie is walked in xor order, no lock is taken)
     public List<PeerId> NearestPeers(@NonNull ID id, int count) {
+        return trie.closest(id, count);
+    }
 
-        // This is the number of bits _we_ share with the key. All peers in this
-        // bucket share cpl bits with us and will therefore share at least cpl+1
-        // bits with the given key. +1 because both the target and all peers in
-        // this bucket differ from us in the cpl bit.
-
-        int cpl = bucketId(id);
-
-        PeerDistanceSorter pds = new PeerDistanceSorter(id);
-
-        // Add peers from the target bucket (cpl+1 shared bits).
-        pds.appendPeersFromList(getBucket(cpl));
-
-        // If we're short, add peers from all buckets to the right. All buckets
-        // to the right share exactly cpl bits (as opposed to the cpl+1 bits
-        // shared by the peers in the cpl bucket).
-        //
-        // This is, unfortunately, less efficient than we'd like. We will switch
-        // to a trie implementation eventually which will allow us to find the
-        // closest N peers to any target key.
-
-        if (pds.size() < count) {
-            for (int i = cpl + 1; i < buckets.size(); i++) {
-                pds.appendPeersFromList(getBucket(i));
-            }
-        }
-
-        // If we're still short, add in buckets that share _fewer_ bits. We can
-        // do this bucket by bucket because each bucket will share 1 fewer bit
-        // than the last.
-        //
-        // * bucket cpl-1: cpl-1 shared bits.
-        // * bucket cpl-2: cpl-2 shared bits.
-        // ...
-        for (int i = cpl - 1; i >= 0 && pds.size() < count; i--) {
-            pds.appendPeersFromList(getBucket(i));
-        }
-
-        // Sort by distance to local peer
-        Collections.sort(pds);
-
-
-        List<PeerId> peers = new ArrayList<>();
-        for (PeerDistanceSorter.PeerDistance entry : pds) {
-            peers.add(entry.getPeerId());
-        }
-
-        return peers;
+    @NonNull
+    public List<PeerId> getPeers() {
+        return trie.getPeers();
     }
 
     public int size() {
-        int tot = 0;
-        for (Bucket bucket : buckets.values()) {
-            tot += bucket.size();
-        }
-        return tot;
+        return trie.size();
     }
 
 
@@ -98,18 +53,11 @@ public class RoutingTable {
     }
 
     private Bucket getBucket(int cpl) {
-        synchronized (TAG.intern()) {
-            Bucket bucket = buckets.get(cpl);
-            if (bucket != null) {
-                return bucket;
-            }
-            bucket = new Bucket();
-            buckets.put(cpl, bucket);
-            return bucket;
-        }
+        return buckets.computeIfAbsent(cpl, key -> new Bucket());
     }
 
-    public void addPeer(@NonNull PeerId peerId, boolean isReplaceable) {
+    // changes are serialized by the table, each one publishes a new trie
+    public synchronized void addPeer(@NonNull PeerId peerId, boolean isReplaceable) {
 
         try {
             int bucketID = bucketIdForPeer(peerId);
@@ -123,7 +71,7 @@ public class RoutingTable {
 
             // We have enough space in the bucket
             if (bucket.size() < bucketSize) {
-                bucket.addPeer(peerId, isReplaceable);
+                trie = trie.add(bucket.addPeer(peerId, isReplaceable));
                 return;
             }
 
@@ -137,7 +85,7 @@ public class RoutingTable {
             if (replaceablePeer != null) {
                 // let's evict it and add the new peer
                 if (removePeer(replaceablePeer)) {
-                    bucket.addPeer(peerId, isReplaceable);
+                    trie = trie.add(bucket.addPeer(peerId, isReplaceable));
                 }
             }
         } finally {
@@ -145,11 +93,15 @@ public class RoutingTable {
         }
     }
 
-    boolean removePeer(@NonNull PeerId p) {
-        int bucketID = bucketIdForPeer(p);
-        Bucket bucket = getBucket(bucketID);
+    synchronized boolean removePeer(@NonNull PeerId p) {
+        ID peerID = ID.convertPeerID(p);
+        Bucket bucket = getBucket(bucketId(peerID));
         Objects.requireNonNull(bucket);
-        return bucket.removePeer(p);
+        if (bucket.removePeer(p)) {
+            trie = trie.remove(peerID);
+            return true;
+        }
+        return false;
     }
 
 
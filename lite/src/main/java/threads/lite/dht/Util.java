@@ -38,9 +38,29 @@ public class Util {
     }
 
 
+    // the length of the common prefix, computed without a xor of the ids
     public static int CommonPrefixLen(ID a, ID b) {
-        byte[] res = xor(a.data, b.data);
-        return ZeroPrefixLen(res);
+        for (int i = 0; i < a.data.length; i++) {
+            int uint8 = (a.data[i] ^ b.data[i]) & 0xFF;
+            if (uint8 != 0) {
+                return i * 8 + LeadingZeros8(uint8);
+            }
+        }
+        return a.data.length * 8;
+    }
+
+    // compares the distances of a and b to the target (a ^ target with b ^ target),
+    // byte by byte without a xor of the ids
+    public static int CompareDistance(@NonNull byte[] a, @NonNull byte[] b,
+                                      @NonNull byte[] target) {
+        for (int i = 0; i < target.length; i++) {
+            int da = (a[i] ^ target[i]) & 0xFF;
+            int db = (b[i] ^ target[i]) & 0xFF;
+            if (da != db) {
+                return da < db ? -1 : 1;
+            }
+        }
+        return 0;
     }
 
 
@@ -72,9 +92,9 @@ public class Util {
 
         // SetBytes interprets buf as the bytes of a big-endian unsigned
         // integer, sets z to that value, and returns z.
-        // big.NewInt(0).SetBytes(k3)
+        // big.NewInt(0).SetBytes(k3) (signum 1, the distance is never negative)
 
-        return new BigInteger(k3);
+        return new BigInteger(1, k3);
     }
 
 }
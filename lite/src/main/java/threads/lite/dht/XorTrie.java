@@ -0,0 +1,170 @@
+package threads.lite.dht;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import threads.lite.cid.PeerId;
+
+// Immutable binary trie of the peers of the routing table, keyed by the bits of
+// their ids (a node with a single peer is not split further). A change returns a
+// new trie which shares the untouched nodes with the old one, so readers work on a
+// consistent snapshot without a lock.
+//
+// The closest peers to a target are collected by a walk in xor order, at each level
+// the branch with the bit of the target comes first. The peers are visited by
+// increasing distance, so neither a sort nor a xor of the ids is required.
+public class XorTrie {
+
+    public static final XorTrie EMPTY = new XorTrie(null, null, null, 0);
+
+    @Nullable
+    private final Bucket.PeerInfo peer;
+    @Nullable
+    private final XorTrie zero;
+    @Nullable
+    private final XorTrie one;
+    private final int size;
+
+    private XorTrie(@Nullable Bucket.PeerInfo peer, @Nullable XorTrie zero,
+                    @Nullable XorTrie one, int size) {
+        this.peer = peer;
+        this.zero = zero;
+        this.one = one;
+        this.size = size;
+    }
+
+    @NonNull
+    private static XorTrie leaf(@NonNull Bucket.PeerInfo peer) {
+        return new XorTrie(peer, null, null, 1);
+    }
+
+    // a branch with less than two peers is replaced by its only leaf (or is empty)
+    @NonNull
+    private static XorTrie branch(@NonNull XorTrie zero, @NonNull XorTrie one) {
+        int size = zero.size + one.size;
+        if (size == 0) {
+            return EMPTY;
+        }
+        if (size == 1) {
+            return zero.size == 1 ? zero : one;
+        }
+        return new XorTrie(null, zero, one, size);
+    }
+
+    private static boolean bit(@NonNull byte[] id, int depth) {
+        return ((id[depth >> 3] >> (7 - (depth & 7))) & 1) == 1;
+    }
+
+    // both peers are pushed down until their ids differ
+    @NonNull
+    private static XorTrie split(@NonNull Bucket.PeerInfo a, @NonNull Bucket.PeerInfo b,
+                                 int depth) {
+        boolean bitA = bit(a.getID().data, depth);
+        boolean bitB = bit(b.getID().data, depth);
+        if (bitA != bitB) {
+            return bitA ? new XorTrie(null, leaf(b), leaf(a), 2) :
+                    new XorTrie(null, leaf(a), leaf(b), 2);
+        }
+        XorTrie child = split(a, b, depth + 1);
+        return bitA ? new XorTrie(null, EMPTY, child, 2) :
+                new XorTrie(null, child, EMPTY, 2);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @NonNull
+    public XorTrie add(@NonNull Bucket.PeerInfo info) {
+        return add(info, 0);
+    }
+
+    @NonNull
+    private XorTrie add(@NonNull Bucket.PeerInfo info, int depth) {
+        if (size == 0) {
+            return leaf(info);
+        }
+        if (peer != null) {
+            if (Arrays.equals(peer.getID().data, info.getID().data)) {
+                return this;
+            }
+            return split(peer, info, depth);
+        }
+        if (bit(info.getID().data, depth)) {
+            XorTrie child = one.add(info, depth + 1);
+            return child == one ? this : branch(zero, child);
+        }
+        XorTrie child = zero.add(info, depth + 1);
+        return child == zero ? this : branch(child, one);
+    }
+
+    @NonNull
+    public XorTrie remove(@NonNull ID id) {
+        return remove(id.data, 0);
+    }
+
+    @NonNull
+    private XorTrie remove(@NonNull byte[] id, int depth) {
+        if (size == 0) {
+            return this;
+        }
+        if (peer != null) {
+            return Arrays.equals(peer.getID().data, id) ? EMPTY : this;
+        }
+        if (bit(id, depth)) {
+            XorTrie child = one.remove(id, depth + 1);
+            return child == one ? this : branch(zero, child);
+        }
+        XorTrie child = zero.remove(id, depth + 1);
+        return child == zero ? this : branch(child, one);
+    }
+
+    // the count closest peers to the target, sorted by their distance
+    @NonNull
+    public List<PeerId> closest(@NonNull ID target, int count) {
+        List<PeerId> result = new ArrayList<>(Math.min(count, size));
+        closest(target.data, 0, count, result);
+        return result;
+    }
+
+    private void closest(@NonNull byte[] target, int depth, int count,
+                         @NonNull List<PeerId> result) {
+        if (size == 0 || result.size() >= count) {
+            return;
+        }
+        if (peer != null) {
+            result.add(peer.getPeerId());
+            return;
+        }
+        if (bit(target, depth)) {
+            one.closest(target, depth + 1, count, result);
+            zero.closest(target, depth + 1, count, result);
+        } else {
+            zero.closest(target, depth + 1, count, result);
+            one.closest(target, depth + 1, count, result);
+        }
+    }
+
+    @NonNull
+    public List<PeerId> getPeers() {
+        List<PeerId> result = new ArrayList<>(size);
+        peers(result);
+        return result;
+    }
+
+    private void peers(@NonNull List<PeerId> result) {
+        if (size == 0) {
+            return;
+        }
+        if (peer != null) {
+            result.add(peer.getPeerId());
+            return;
+        }
+        zero.peers(result);
+        one.peers(result);
+    }
+}
@@ -2,9 +2,8 @@ package threads.lite.format;
 
 import androidx.annotation.NonNull;
 
-import java.security.MessageDigest;
-
 import threads.lite.cid.Cid;
+import threads.lite.cid.Prefix;
 
 public class BasicBlock implements Block {
 
@@ -22,8 +21,7 @@ public class BasicBlock implements Block {
 
     public static Block createBlock(@NonNull byte[] data) {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data);
+            byte[] hash = Prefix.sha256(data);
             Cid cid = Cid.NewCidV0(hash);
             return createBlockWithCid(cid, data);
         } catch (Throwable throwable) {
@@ -2,10 +2,10 @@ package threads.lite.format;
 
 import androidx.annotation.NonNull;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import threads.lite.cid.Cid;
-import threads.lite.data.Dshelp;
 import threads.lite.data.Storage;
 
 public interface BlockStore {
@@ -15,15 +15,13 @@ public interface BlockStore {
         return new BlockStore() {
             @Override
             public boolean hasBlock(@NonNull Cid cid) {
-                String key = Dshelp.cidToDsKey(cid).getKey();
-                return storage.hasBlock(key);
+                return storage.hasBlock(cid.bytes());
             }
 
             @Override
             public Block getBlock(@NonNull Cid cid) {
 
-                String key = Dshelp.cidToDsKey(cid).getKey();
-                byte[] data = storage.getData(key);
+                byte[] data = storage.getData(cid.bytes());
                 if (data == null) {
                     return null;
                 }
@@ -32,19 +30,26 @@ public interface BlockStore {
 
             @Override
             public void putBlock(@NonNull Block block) {
-                String key = Dshelp.cidToDsKey(block.getCid()).getKey();
-                storage.insertBlock(key, block.getRawData());
+                storage.insertBlock(block.getCid().bytes(), block.getRawData());
+            }
+
+            @Override
+            public void putBlocks(@NonNull List<Block> blocks) {
+                List<threads.lite.data.Block> entries = new ArrayList<>();
+                for (Block block : blocks) {
+                    entries.add(threads.lite.data.Block.createBlock(
+                            block.getCid().bytes(), block.getRawData()));
+                }
+                storage.insertBlocks(entries);
             }
 
             @Override
             public int getSize(@NonNull Cid cid) {
-                String key = Dshelp.cidToDsKey(cid).getKey();
-                return storage.sizeBlock(key);
+                return storage.sizeBlock(cid.bytes());
             }
 
             public void deleteBlock(@NonNull Cid cid) {
-                String key = Dshelp.cidToDsKey(cid).getKey();
-                storage.deleteBlock(key);
+                storage.deleteBlock(cid.bytes());
             }
 
             @Override
@@ -67,6 +72,8 @@ public interface BlockStore {
 
     void putBlock(@NonNull Block block);
 
+    void putBlocks(@NonNull List<Block> blocks);
+
     int getSize(@NonNull Cid cid);
 }
 
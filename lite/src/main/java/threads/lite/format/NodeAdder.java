@@ -4,4 +4,7 @@ import androidx.annotation.NonNull;
 
 public interface NodeAdder {
     void Add(@NonNull Node nd);
+
+    // writes out nodes which are not yet stored
+    void Flush();
 }
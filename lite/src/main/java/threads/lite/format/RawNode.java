@@ -5,12 +5,12 @@ import android.util.Pair;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
 
 import threads.lite.cid.Builder;
 import threads.lite.cid.Cid;
+import threads.lite.cid.Prefix;
 
 public class RawNode implements Node {
 
@@ -24,8 +24,7 @@ public class RawNode implements Node {
     public static Node NewRawNode(byte[] data) {
 
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data);
+            byte[] hash = Prefix.sha256(data);
 
             Cid cid = Cid.NewCidV1(Cid.Raw, hash);
             Block blk = BasicBlock.createBlockWithCid(cid, data);
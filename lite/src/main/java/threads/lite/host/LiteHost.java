@@ -24,6 +24,7 @@ import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.security.cert.X509Certificate;
 import java.time.Duration;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -39,6 +40,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -62,6 +64,8 @@ import threads.lite.core.ConnectionIssue;
 import threads.lite.core.TimeoutCloseable;
 import threads.lite.crypto.PrivKey;
 import threads.lite.crypto.PubKey;
+import threads.lite.dagsync.DagSync;
+import threads.lite.data.PeerStore;
 import threads.lite.dht.KadDht;
 import threads.lite.dht.Routing;
 import threads.lite.format.BlockStore;
@@ -138,12 +142,23 @@ public class LiteHost {
     private final ConcurrentHashMap<PeerId, Set<Multiaddr>> addressBook = new ConcurrentHashMap<>();
     @NonNull
     private final ConcurrentHashMap<PeerId, QuicClientConnection> connections = new ConcurrentHashMap<>();
+    // connections which were taken by acquire, with the number of callers which
+    // did not release them yet and the time when they were used the last time (by
+    // the dht or by bitswap), only these are closed when idle
+    @NonNull
+    private final ConcurrentHashMap<PeerId, Usage> used = new ConcurrentHashMap<>();
+    @NonNull
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor();
     @NonNull
     private final Routing routing;
     @NonNull
     private final PrivKey privKey;
     @NonNull
     private final BitSwap bitSwap;
+    @NonNull
+    private final DagSync dagSync;
+    @NonNull
+    private final PeerStore peerStore;
 
     private final int port;
     @NonNull
@@ -159,9 +174,11 @@ public class LiteHost {
     public LiteHost(@NonNull LiteHostCertificate selfSignedCertificate,
                     @NonNull PrivKey privKey,
                     @NonNull BlockStore blockstore,
+                    @NonNull PeerStore peerStore,
                     int port, int alpha) {
         this.selfSignedCertificate = selfSignedCertificate;
         this.privKey = privKey;
+        this.peerStore = peerStore;
         this.port = port;
 
         this.routing = new KadDht(this,
@@ -169,6 +186,10 @@ public class LiteHost {
                 IPFS.KAD_DHT_BUCKET_SIZE);
 
         this.bitSwap = new BitSwap(blockstore, this);
+        this.dagSync = new DagSync(blockstore, this);
+
+        sweeper.scheduleWithFixedDelay(this::sweep, IPFS.CONNECTION_SWEEP_INTERVAL,
+                IPFS.CONNECTION_SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
 
     }
 
@@ -213,11 +234,21 @@ public class LiteHost {
         return routing;
     }
 
+    @NonNull
+    public PeerStore getPeerStore() {
+        return peerStore;
+    }
+
     @NonNull
     public BitSwap getBitSwap() {
         return bitSwap;
     }
 
+    @NonNull
+    public DagSync getDagSync() {
+        return dagSync;
+    }
+
     //@Override
     public boolean gatePeer(@NonNull PeerId peerID) {
         return bitSwap.gatePeer(peerID);
@@ -297,6 +328,11 @@ public class LiteHost {
         routing.findProviders(closeable, providers, cid);
     }
 
+    // the peer answered a want of the content with DONT_HAVE
+    public void removeProvider(@NonNull Cid cid, @NonNull PeerId peerId) {
+        routing.removeProvider(cid, peerId);
+    }
+
     public boolean hasAddresses(@NonNull PeerId peerId) {
         Collection<Multiaddr> addrInfo = addressBook.get(peerId);
         if (addrInfo != null) {
@@ -567,6 +603,7 @@ public class LiteHost {
             QuicClientConnection connection = connections.get(peerId);
             if (connection != null) {
                 if (connection.isConnected()) {
+                    active(peerId);
                     return connection;
                 } else {
                     removeConnection(peerId);
@@ -627,6 +664,8 @@ public class LiteHost {
 
             }
 
+            // a cached provider which can not be connected is not returned again
+            routing.removeProvider(peerId);
             throw new ConnectionIssue();
         }
     }
@@ -636,6 +675,8 @@ public class LiteHost {
             LogUtils.verbose(TAG, "Remove Connection " + peerId.toBase58());
 
             connections.remove(peerId);
+            used.remove(peerId);
+            bitSwap.disconnected(peerId);
 
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
@@ -712,6 +753,10 @@ public class LiteHost {
 
 
     private List<String> getProtocols() {
+        if (IPFS.DAGSYNC_SERVER_ACTIVE) {
+            return Arrays.asList(IPFS.STREAM_PROTOCOL, IPFS.IDENTITY_PROTOCOL,
+                    IPFS.BITSWAP_PROTOCOL, IPFS.DAGSYNC_PROTOCOL);
+        }
         return Arrays.asList(IPFS.STREAM_PROTOCOL, IPFS.IDENTITY_PROTOCOL, IPFS.BITSWAP_PROTOCOL);
     }
 
@@ -788,6 +833,8 @@ public class LiteHost {
         try {
             if (!isProtected(peerId)) {
                 QuicClientConnection connection = connections.remove(peerId);
+                used.remove(peerId);
+                bitSwap.disconnected(peerId);
                 if (connection != null) {
                     connection.close();
                 }
@@ -797,6 +844,84 @@ public class LiteHost {
         }
     }
 
+    // connects to the peer like connect, the caller has to hand the connection back
+    // by release (or disconnect it), it is not closed by the sweep before
+    @NonNull
+    public QuicClientConnection acquire(@NonNull Closeable closeable,
+                                        @NonNull PeerId peerId, int timeout)
+            throws ConnectionIssue, ClosedException {
+        synchronized (peerId.toBase58().intern()) {
+            QuicClientConnection connection = connect(closeable, peerId, timeout);
+            used.computeIfAbsent(peerId, key -> new Usage()).acquire();
+            return connection;
+        }
+    }
+
+    // the connection is used by another protocol (e.g. a bitswap stream), an
+    // acquired connection is not idle as long as it is used
+    public void active(@NonNull PeerId peerId) {
+        Usage usage = used.get(peerId);
+        if (usage != null) {
+            usage.touch();
+        }
+    }
+
+    // the connection is not needed any more by the caller, but kept open for the
+    // next requests (dht lookups often ask the same peers again)
+    public void release(@NonNull PeerId peerId) {
+        Usage usage = used.get(peerId);
+        if (usage != null) {
+            usage.release();
+        }
+    }
+
+    // Connections which are not used by a caller of acquire and are idle longer
+    // than CONNECTION_IDLE_TIMEOUT are closed, as well as the least recently used
+    // ones beyond CONNECTION_IDLE_MAX. Connections which were never acquired are
+    // not touched.
+    private void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            List<Map.Entry<PeerId, Long>> idle = new ArrayList<>();
+            for (Map.Entry<PeerId, Usage> entry : used.entrySet()) {
+                PeerId peer = entry.getKey();
+                if (isProtected(peer) || relays.contains(peer)) {
+                    continue;
+                }
+                Usage usage = entry.getValue();
+                if (usage.isUsed()) {
+                    continue;
+                }
+                long time = usage.getTime();
+                if (now - time > IPFS.CONNECTION_IDLE_TIMEOUT) {
+                    close(peer, IPFS.CONNECTION_IDLE_TIMEOUT);
+                } else {
+                    idle.add(new AbstractMap.SimpleEntry<>(peer, time));
+                }
+            }
+            if (idle.size() > IPFS.CONNECTION_IDLE_MAX) {
+                idle.sort(Map.Entry.comparingByValue());
+                for (int i = 0; i < idle.size() - IPFS.CONNECTION_IDLE_MAX; i++) {
+                    close(idle.get(i).getKey(), 0);
+                }
+            }
+        } catch (Throwable throwable) {
+            LogUtils.error(TAG, throwable);
+        }
+    }
+
+    // closes the connection when it is still not used and idle longer than the
+    // given time, acquire takes the same lock
+    private void close(@NonNull PeerId peerId, long idle) {
+        synchronized (peerId.toBase58().intern()) {
+            Usage usage = used.get(peerId);
+            if (usage != null && !usage.isUsed() &&
+                    System.currentTimeMillis() - usage.getTime() >= idle) {
+                disconnect(peerId);
+            }
+        }
+    }
+
     public void updateNetwork(@NonNull String networkInterface) {
         updateListenAddresses(networkInterface);
     }
@@ -837,4 +962,31 @@ public class LiteHost {
         }
     }
 
+
+    private static class Usage {
+        private int users = 0;
+        private long time = System.currentTimeMillis();
+
+        synchronized void acquire() {
+            users++;
+            time = System.currentTimeMillis();
+        }
+
+        synchronized void release() {
+            users = Math.max(0, users - 1);
+            time = System.currentTimeMillis();
+        }
+
+        synchronized void touch() {
+            time = System.currentTimeMillis();
+        }
+
+        synchronized boolean isUsed() {
+            return users > 0;
+        }
+
+        synchronized long getTime() {
+            return time;
+        }
+    }
 }
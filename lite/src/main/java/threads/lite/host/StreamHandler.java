@@ -5,6 +5,9 @@ import androidx.annotation.NonNull;
 import net.luminis.quic.QuicClientConnection;
 import net.luminis.quic.stream.QuicStream;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import bitswap.pb.MessageOuterClass;
 import identify.pb.IdentifyOuterClass;
 import threads.lite.IPFS;
@@ -22,6 +25,7 @@ public class StreamHandler extends QuicStreamHandler {
     private final DataHandler reader = new DataHandler(IPFS.MESSAGE_SIZE_MAX);
     @NonNull
     private final PeerId peerId;
+    private final Set<String> handled = new HashSet<>();
     private volatile String protocol = null;
     private long time = System.currentTimeMillis();
 
@@ -50,79 +54,105 @@ public class StreamHandler extends QuicStreamHandler {
 
         reader.load(msg);
 
-        if (reader.isDone()) {
-            for (String token : reader.getTokens()) {
+        // the complete frames are handled after every load, a read is not
+        // required to end on a frame boundary
+        for (String token : reader.getTokens()) {
 
-                LogUtils.debug(TAG, "Token " + token + " StreamId " + streamId + " PeerId " + peerId);
+            // tokens of former reads are not answered again
+            if (!handled.add(token)) {
+                continue;
+            }
 
-                protocol = token;
-                switch (token) {
-                    case IPFS.STREAM_PROTOCOL:
-                        writeAndFlush(DataHandler.writeToken(IPFS.STREAM_PROTOCOL));
-                        break;
-                    case IPFS.PUSH_PROTOCOL:
-                        writeAndFlush(DataHandler.writeToken(IPFS.PUSH_PROTOCOL));
-                        closeOutputStream();
-                        break;
-                    case IPFS.BITSWAP_PROTOCOL:
-                        // TODO check if correct
-                        if (host.gatePeer(peerId)) {
-                            writeAndFlush(DataHandler.writeToken(IPFS.NA));
-                            closeInputStream();
-                            closeOutputStream();
-                            return;
-                        } else {
-                            writeAndFlush(DataHandler.writeToken(IPFS.BITSWAP_PROTOCOL));
-                            closeOutputStream();
-                        }
-                        time = System.currentTimeMillis();
-                        break;
-                    case IPFS.IDENTITY_PROTOCOL:
-                        writeAndFlush(DataHandler.writeToken(IPFS.IDENTITY_PROTOCOL));
+            LogUtils.debug(TAG, "Token " + token + " StreamId " + streamId + " PeerId " + peerId);
 
-                        IdentifyOuterClass.Identify response =
-                                host.createIdentity(connection.getRemoteAddress());
-                        writeAndFlush(DataHandler.encode(response));
+            if (!IPFS.STREAM_PROTOCOL.equals(token)) {
+                protocol = token;
+            }
+            switch (token) {
+                case IPFS.STREAM_PROTOCOL:
+                    writeAndFlush(DataHandler.writeToken(IPFS.STREAM_PROTOCOL));
+                    break;
+                case IPFS.PUSH_PROTOCOL:
+                    writeAndFlush(DataHandler.writeToken(IPFS.PUSH_PROTOCOL));
+                    closeOutputStream();
+                    break;
+                case IPFS.BITSWAP_PROTOCOL:
+                    // TODO check if correct
+                    if (host.gatePeer(peerId)) {
+                        writeAndFlush(DataHandler.writeToken(IPFS.NA));
                         closeInputStream();
                         closeOutputStream();
                         return;
-                    default:
-                        LogUtils.debug(TAG, "Ignore " + token +
-                                " StreamId " + streamId + " PeerId " + peerId);
+                    } else {
+                        writeAndFlush(DataHandler.writeToken(IPFS.BITSWAP_PROTOCOL));
+                        closeOutputStream();
+                    }
+                    time = System.currentTimeMillis();
+                    break;
+                case IPFS.DAGSYNC_PROTOCOL:
+                    if (!IPFS.DAGSYNC_SERVER_ACTIVE || host.gatePeer(peerId)) {
                         writeAndFlush(DataHandler.writeToken(IPFS.NA));
                         closeInputStream();
                         closeOutputStream();
-                        host.disconnect(peerId);
                         return;
-                }
+                    }
+                    writeAndFlush(DataHandler.writeToken(IPFS.DAGSYNC_PROTOCOL));
+                    break;
+                case IPFS.IDENTITY_PROTOCOL:
+                    writeAndFlush(DataHandler.writeToken(IPFS.IDENTITY_PROTOCOL));
+
+                    IdentifyOuterClass.Identify response =
+                            host.createIdentity(connection.getRemoteAddress());
+                    writeAndFlush(DataHandler.encode(response));
+                    closeInputStream();
+                    closeOutputStream();
+                    return;
+                default:
+                    LogUtils.debug(TAG, "Ignore " + token +
+                            " StreamId " + streamId + " PeerId " + peerId);
+                    writeAndFlush(DataHandler.writeToken(IPFS.NA));
+                    closeInputStream();
+                    closeOutputStream();
+                    host.disconnect(peerId);
+                    return;
             }
-            byte[] message = reader.getMessage();
-
-            if (message != null) {
-                if (protocol != null) {
-                    switch (protocol) {
-                        case IPFS.BITSWAP_PROTOCOL:
-                            host.forwardMessage(peerId,
-                                    MessageOuterClass.Message.parseFrom(message));
-
-                            LogUtils.debug(TAG, "Time " + (System.currentTimeMillis() - time) +
-                                    " StreamId " + streamId + " PeerId " + peerId +
-                                    " Protected " + host.isProtected(peerId));
-                            closeInputStream();
-                            break;
-                        case IPFS.PUSH_PROTOCOL:
-                            host.push(peerId, message);
-                            closeInputStream();
-                            break;
-                        default:
-                            throw new Exception("unknown protocol");
+        }
+        if (protocol != null) {
+            switch (protocol) {
+                case IPFS.BITSWAP_PROTOCOL:
+                    // the sender keeps the stream open for further messages
+                    for (byte[] message : reader.takeMessages()) {
+                        host.forwardMessage(peerId,
+                                MessageOuterClass.Message.parseFrom(message));
+
+                        LogUtils.debug(TAG, "Time " + (System.currentTimeMillis() - time) +
+                                " StreamId " + streamId + " PeerId " + peerId +
+                                " Protected " + host.isProtected(peerId));
+                        time = System.currentTimeMillis();
+                    }
+                    break;
+                case IPFS.DAGSYNC_PROTOCOL:
+                    for (byte[] request : reader.takeMessages()) {
+                        closeInputStream();
+                        host.getDagSync().serve(peerId, this, request);
+                    }
+                    break;
+                case IPFS.PUSH_PROTOCOL:
+                    for (byte[] message : reader.takeMessages()) {
+                        host.push(peerId, message);
+                        closeInputStream();
+                    }
+                    break;
+                default:
+                    if (reader.getMessage() != null) {
+                        throw new Exception("unknown protocol");
                     }
-                } else {
-                    throw new Exception("unknown protocol");
-                }
             }
-        } else {
+        } else if (reader.getMessage() != null) {
+            throw new Exception("unknown protocol");
+        }
 
+        if (!reader.isDone()) {
             LogUtils.debug(TAG, "Iteration " + protocol + " " + reader.hasRead() + " "
                     + reader.expectedBytes() + " StreamId " + streamId + " PeerId " + peerId +
                     " Tokens " + reader.getTokens().toString());
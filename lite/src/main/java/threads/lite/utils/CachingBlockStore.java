@@ -0,0 +1,193 @@
+package threads.lite.utils;
+
+import androidx.annotation.NonNull;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import threads.lite.cid.Cid;
+import threads.lite.format.BasicBlock;
+import threads.lite.format.Block;
+import threads.lite.format.BlockStore;
+
+// Keeps recently used blocks in memory, the cache is bounded by the sum of the
+// block sizes. Blocks with links (root, directory and intermediate file nodes)
+// are kept in preference to leaves, leaves are always evicted first.
+public class CachingBlockStore implements BlockStore {
+
+    private final BlockStore blockstore;
+    private final long capacity;
+    private final LinkedHashMap<Cid, Block> nodes = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Cid, Block> leaves = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private long size = 0;
+
+    public CachingBlockStore(@NonNull BlockStore blockstore, long capacity) {
+        this.blockstore = blockstore;
+        this.capacity = capacity;
+    }
+
+    // a dag-pb node has links when its top level fields contain a link (field 2),
+    // the fields are scanned without decoding the node (protobuf-java writes the
+    // data field 1 first, other encoders the links first)
+    private static boolean hasLinks(@NonNull Cid cid, @NonNull byte[] data) {
+        if (cid.getType() != Cid.DagProtobuf) {
+            return false;
+        }
+        try {
+            CodedInputStream input = CodedInputStream.newInstance(data);
+            int tag;
+            while ((tag = input.readTag()) != 0) {
+                if (WireFormat.getTagFieldNumber(tag) == 2) {
+                    return true;
+                }
+                if (!input.skipField(tag)) {
+                    return false;
+                }
+            }
+        } catch (Throwable ignore) {
+            // not a valid node, handled like a leaf
+        }
+        return false;
+    }
+
+    private synchronized Block lookup(@NonNull Cid cid) {
+        Block block = nodes.get(cid);
+        if (block == null) {
+            block = leaves.get(cid);
+        }
+        return block;
+    }
+
+    private synchronized void cache(@NonNull Block block, boolean leaf) {
+        int length = block.getRawData().length;
+        if (length > capacity / 8) {
+            return;
+        }
+        Cid cid = block.getCid();
+        if (nodes.containsKey(cid) || leaves.containsKey(cid)) {
+            return;
+        }
+        if (leaf) {
+            leaves.put(cid, block);
+        } else {
+            nodes.put(cid, block);
+        }
+        size += length;
+        evict();
+    }
+
+    private void evict() {
+        evict(leaves);
+        evict(nodes);
+    }
+
+    private void evict(@NonNull LinkedHashMap<Cid, Block> map) {
+        Iterator<Map.Entry<Cid, Block>> iterator = map.entrySet().iterator();
+        while (size > capacity && iterator.hasNext()) {
+            Block block = iterator.next().getValue();
+            iterator.remove();
+            size -= block.getRawData().length;
+        }
+    }
+
+    private synchronized void invalidate(@NonNull Cid cid) {
+        Block block = nodes.remove(cid);
+        if (block == null) {
+            block = leaves.remove(cid);
+        }
+        if (block != null) {
+            size -= block.getRawData().length;
+        }
+    }
+
+    public synchronized void clear() {
+        nodes.clear();
+        leaves.clear();
+        size = 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized long getCachedBytes() {
+        return size;
+    }
+
+    @Override
+    public boolean hasBlock(@NonNull Cid cid) {
+        if (lookup(cid) != null) {
+            return true;
+        }
+        return blockstore.hasBlock(cid);
+    }
+
+    @Override
+    public Block getBlock(@NonNull Cid cid) {
+        Block block = lookup(cid);
+        if (block != null) {
+            hits.incrementAndGet();
+            return block;
+        }
+        misses.incrementAndGet();
+        block = blockstore.getBlock(cid);
+        if (block != null) {
+            cache(block, !hasLinks(cid, block.getRawData()));
+        }
+        return block;
+    }
+
+    @Override
+    public void deleteBlock(@NonNull Cid cid) {
+        invalidate(cid);
+        blockstore.deleteBlock(cid);
+    }
+
+    @Override
+    public void deleteBlocks(@NonNull List<Cid> cids) {
+        for (Cid cid : cids) {
+            invalidate(cid);
+        }
+        blockstore.deleteBlocks(cids);
+    }
+
+    @Override
+    public void putBlock(@NonNull Block block) {
+        blockstore.putBlock(block);
+        // leaves are only cached when they are read
+        if (hasLinks(block.getCid(), block.getRawData())) {
+            cache(BasicBlock.createBlockWithCid(block.getCid(), block.getRawData()), false);
+        }
+    }
+
+    @Override
+    public void putBlocks(@NonNull List<Block> blocks) {
+        blockstore.putBlocks(blocks);
+        for (Block block : blocks) {
+            if (hasLinks(block.getCid(), block.getRawData())) {
+                cache(BasicBlock.createBlockWithCid(block.getCid(), block.getRawData()), false);
+            }
+        }
+    }
+
+    @Override
+    public int getSize(@NonNull Cid cid) {
+        Block block = lookup(cid);
+        if (block != null) {
+            return block.getRawData().length;
+        }
+        return blockstore.getSize(cid);
+    }
+}
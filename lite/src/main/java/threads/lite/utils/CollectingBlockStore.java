@@ -0,0 +1,296 @@
+package threads.lite.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import threads.lite.IPFS;
+import threads.lite.LogUtils;
+import threads.lite.cid.Cid;
+import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+import threads.lite.data.PINS;
+import threads.lite.data.Pin;
+import threads.lite.data.Storage;
+import threads.lite.format.Block;
+import threads.lite.format.BlockStore;
+import threads.lite.format.Decoder;
+import threads.lite.format.Link;
+import threads.lite.format.Node;
+
+// Mark and sweep garbage collector for the blocks which are not reachable from
+// a pin. The blocks which are written while a collection is running are
+// remembered and never swept, the sweep removes the blocks in batches, so
+// readers are not blocked and writers only for the time a batch is deleted.
+//
+// An import (which pins its root only when all blocks are written) runs between
+// startImport and finishImport, the blocks written meanwhile are kept like the
+// blocks written during a collection, so a collection does not remove the blocks
+// of a dag which is not pinned yet.
+//
+// A dag never changes, so the blocks reachable from a pin are remembered and
+// the next collections only walk the dags of new pins (or of pins whose dag
+// was not completely stored during the last walk).
+public class CollectingBlockStore implements BlockStore {
+    private static final String TAG = CollectingBlockStore.class.getSimpleName();
+
+    private final BlockStore blockstore;
+    private final Storage storage;
+    private final PINS pins;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<Cid> fresh = ConcurrentHashMap.newKeySet();
+    private final Map<Cid, Set<Cid>> reachable = new ConcurrentHashMap<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger imports = new AtomicInteger(0);
+    private final AtomicLong size = new AtomicLong(0);
+    private volatile long quota;
+    private volatile long lastCollect = 0;
+
+    public CollectingBlockStore(@NonNull BlockStore blockstore, @NonNull Storage storage,
+                                @NonNull PINS pins, long quota) {
+        this.blockstore = blockstore;
+        this.storage = storage;
+        this.pins = pins;
+        this.quota = quota;
+        this.size.set(storage.getTotalSize());
+    }
+
+    public void setQuota(long quota) {
+        this.quota = quota;
+    }
+
+    public void pin(@NonNull Cid cid, boolean recursive) {
+        pins.pin(cid, recursive);
+        reachable.remove(cid);
+        if (running.get()) {
+            // the blocks of the new pin are not part of the running mark phase
+            Set<Cid> protect = new HashSet<>();
+            try {
+                mark(() -> false, cid, recursive, protect);
+            } catch (ClosedException ignore) {
+                // not possible
+            }
+            fresh.addAll(protect);
+        }
+    }
+
+    public void unpin(@NonNull Cid cid) {
+        pins.unpin(cid);
+        reachable.remove(cid);
+    }
+
+    // removes all pins
+    public void clear() {
+        pins.clear();
+        reachable.clear();
+    }
+
+    public boolean isPinned(@NonNull Cid cid) {
+        return pins.isPinned(cid);
+    }
+
+    public void startImport() {
+        imports.incrementAndGet();
+    }
+
+    // called after the root of the import was pinned
+    public void finishImport() {
+        synchronized (fresh) {
+            if (imports.decrementAndGet() == 0 && !running.get()) {
+                fresh.clear();
+            }
+        }
+    }
+
+    // removes all blocks which are not reachable from a pin, returns the number
+    // of removed blocks (0 when a collection is already running)
+    public int collect(@NonNull Closeable closeable) throws ClosedException {
+        if (!running.compareAndSet(false, true)) {
+            return 0;
+        }
+        int removed = 0;
+        try {
+            List<byte[]> keys = storage.getKeys();
+
+            Set<Cid> marked = new HashSet<>();
+            Set<Cid> roots = new HashSet<>();
+            for (Pin pin : pins.getPins()) {
+                Cid root = Cid.decode(pin.getCid());
+                roots.add(root);
+                Set<Cid> blocks = reachable.get(root);
+                if (blocks == null) {
+                    blocks = new HashSet<>();
+                    if (mark(closeable, root, pin.isRecursive(), blocks)) {
+                        reachable.put(root, blocks);
+                    }
+                }
+                marked.addAll(blocks);
+            }
+            reachable.keySet().retainAll(roots);
+
+            List<Cid> batch = new ArrayList<>();
+            for (byte[] key : keys) {
+                if (closeable.isClosed()) {
+                    throw new ClosedException();
+                }
+                Cid cid = new Cid(key);
+                if (!marked.contains(cid)) {
+                    batch.add(cid);
+                }
+                if (batch.size() >= IPFS.GC_BATCH_SIZE) {
+                    removed += sweep(batch);
+                    batch.clear();
+                }
+            }
+            removed += sweep(batch);
+            LogUtils.info(TAG, "removed blocks " + removed);
+            if (removed > 0) {
+                storage.compact();
+            }
+        } finally {
+            size.set(storage.getTotalSize());
+            lastCollect = System.currentTimeMillis();
+            synchronized (fresh) {
+                if (imports.get() == 0) {
+                    fresh.clear();
+                }
+                running.set(false);
+            }
+        }
+        return removed;
+    }
+
+    private int sweep(@NonNull List<Cid> batch) {
+        lock.writeLock().lock();
+        try {
+            List<Cid> cids = new ArrayList<>();
+            for (Cid cid : batch) {
+                if (!fresh.contains(cid)) {
+                    cids.add(cid);
+                }
+            }
+            blockstore.deleteBlocks(cids);
+            return cids.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // the dag is walked only with local blocks (including the blocks which are not
+    // yet written by the write behind stage), missing blocks are skipped. Returns
+    // false when a block of the dag was missing.
+    private boolean mark(@NonNull Closeable closeable, @NonNull Cid root, boolean recursive,
+                         @NonNull Set<Cid> marked) throws ClosedException {
+        boolean complete = true;
+        Deque<Cid> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            if (closeable.isClosed()) {
+                throw new ClosedException();
+            }
+            Cid cid = stack.pop();
+            if (!marked.add(cid)) {
+                continue;
+            }
+            if (!recursive || cid.getType() == Cid.Raw) {
+                continue;
+            }
+            Block block = blockstore.getBlock(cid);
+            if (block == null) {
+                complete = false;
+                continue;
+            }
+            try {
+                Node node = Decoder.Decode(block);
+                for (Link link : node.getLinks()) {
+                    stack.push(link.getCid());
+                }
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, throwable);
+            }
+        }
+        return complete;
+    }
+
+    private void written(@NonNull Block block) {
+        if (running.get() || imports.get() > 0) {
+            fresh.add(block.getCid());
+        }
+        long current = size.addAndGet(block.getRawData().length);
+        long limit = quota;
+        if (limit > 0 && current > limit && !running.get() &&
+                System.currentTimeMillis() - lastCollect > IPFS.GC_QUOTA_INTERVAL) {
+            lastCollect = System.currentTimeMillis();
+            executor.execute(() -> {
+                try {
+                    collect(() -> false);
+                } catch (Throwable throwable) {
+                    LogUtils.error(TAG, throwable);
+                }
+            });
+        }
+    }
+
+    @Override
+    public boolean hasBlock(@NonNull Cid cid) {
+        return blockstore.hasBlock(cid);
+    }
+
+    @Override
+    public Block getBlock(@NonNull Cid cid) {
+        return blockstore.getBlock(cid);
+    }
+
+    @Override
+    public void deleteBlock(@NonNull Cid cid) {
+        blockstore.deleteBlock(cid);
+    }
+
+    @Override
+    public void deleteBlocks(@NonNull List<Cid> cids) {
+        blockstore.deleteBlocks(cids);
+    }
+
+    @Override
+    public void putBlock(@NonNull Block block) {
+        lock.readLock().lock();
+        try {
+            written(block);
+            blockstore.putBlock(block);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void putBlocks(@NonNull List<Block> blocks) {
+        lock.readLock().lock();
+        try {
+            for (Block block : blocks) {
+                written(block);
+            }
+            blockstore.putBlocks(blocks);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getSize(@NonNull Cid cid) {
+        return blockstore.getSize(cid);
+    }
+}
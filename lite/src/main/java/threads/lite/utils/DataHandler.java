@@ -1,15 +1,16 @@
 package threads.lite.utils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.google.protobuf.MessageLite;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import threads.lite.IPFS;
@@ -20,11 +21,12 @@ import threads.lite.core.ProtocolIssue;
 
 public class DataHandler {
     private static final String TAG = DataHandler.class.getSimpleName();
-    private final Set<String> tokens = new HashSet<>();
+    private final Set<String> tokens = new LinkedHashSet<>();
     private final int maxLength;
     private ByteArrayOutputStream temp = new ByteArrayOutputStream();
     private boolean isDone = false;
     private byte[] message = null;
+    private final List<byte[]> messages = new ArrayList<>();
     private int expectedLength;
 
     public DataHandler(int maxLength) {
@@ -32,29 +34,23 @@ public class DataHandler {
         this.maxLength = maxLength;
     }
 
-    private static int copy(InputStream source, OutputStream sink, int length) throws IOException {
-        int nread = 0;
-        byte[] buf = new byte[length];
-        int n;
-        while ((n = source.read(buf)) > 0) {
-            sink.write(buf, 0, n);
-            nread += n;
-            if (nread == length) {
-                break;
+    // reads the varint at the offset, returns null when the varint is not complete
+    @Nullable
+    private static long[] readVarint(@NonNull byte[] data, int offset, int end) {
+        long x = 0;
+        int s = 0;
+        for (int i = 0; i < 10 && offset + i < end; i++) {
+            int b = data[offset + i] & 0xFF;
+            if (b < 0x80) {
+                if (i == 9 && b > 1) {
+                    throw new IllegalStateException("Overflow reading varint!");
+                }
+                return new long[]{x | (((long) b) << s), i + 1};
             }
+            x |= ((long) b & 0x7f) << s;
+            s += 7;
         }
-        return nread;
-    }
-
-    private static int copy(InputStream source, OutputStream sink) throws IOException {
-        int nread = 0;
-        byte[] buf = new byte[4096];
-        int n;
-        while ((n = source.read(buf)) > 0) {
-            sink.write(buf, 0, n);
-            nread += n;
-        }
-        return nread;
+        return null;
     }
 
     public static byte[] encode(@NonNull MessageLite message) {
@@ -104,10 +100,20 @@ public class DataHandler {
         return tokens;
     }
 
+    // the messages which were read since the last call, a stream can carry more
+    // than one message (e.g. a long lived bitswap stream)
+    @NonNull
+    public List<byte[]> takeMessages() {
+        List<byte[]> result = new ArrayList<>(messages);
+        messages.clear();
+        return result;
+    }
+
+    // splits the data into varint length prefixed frames, frames which are not
+    // complete are kept until the remaining data is loaded
     public void load(@NonNull byte[] data)
             throws IOException, ProtocolIssue {
 
-
         temp.write(data);
 
         // shortcut
@@ -116,56 +122,60 @@ public class DataHandler {
             return;
         }
 
-
-        try (InputStream inputStream = new ByteArrayInputStream(temp.toByteArray())) {
-            expectedLength = (int) Multihash.readVarint(inputStream);
-
-            if (expectedLength > maxLength) {
-                LogUtils.error(TAG, "expected length " + expectedLength + " max length " + maxLength);
-                throw new ProtocolIssue();
-            }
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            int read = copy(inputStream, outputStream, expectedLength);
-            if (read == expectedLength) {
-                // token found
-                byte[] tokenData = outputStream.toByteArray();
-                // expected to be for a token
-                if (tokenData[0] == '/' && tokenData[read - 1] == '\n') {
-
-                    String token = new String(tokenData, Charsets.UTF_8);
-                    token = token.substring(0, read - 1);
-                    tokens.add(token);
-                    //LogUtils.error(TAG, "token  " + token);
-                } else if (tokenData[0] == 'n' && tokenData[1] == 'a' && tokenData[read - 1] == '\n') {
-                    tokens.add(IPFS.NA);
-                } else if (tokenData[0] == 'l' && tokenData[1] == 's' && tokenData[read - 1] == '\n') {
-                    tokens.add(IPFS.LS);
-                } else {
-                    //LogUtils.error(TAG, "token ??? " + new String(tokenData));
-                    message = tokenData;
+        byte[] buffer = temp.toByteArray();
+        int offset = 0;
+        try {
+            while (offset < buffer.length) {
+                long[] varint = readVarint(buffer, offset, buffer.length);
+                if (varint == null) {
+                    break;
                 }
-                // check if still data to read
-                ByteArrayOutputStream rest = new ByteArrayOutputStream();
-                int restRead = copy(inputStream, rest);
-                if (restRead == 0) {
-                    isDone = true;
-                } else {
-                    DataHandler sub = new DataHandler(maxLength);
-                    sub.load(rest.toByteArray());
-                    this.merge(sub);
+                int length = (int) varint[0];
+                if (length > maxLength || length < 0) {
+                    LogUtils.error(TAG, "expected length " + length + " max length " + maxLength);
+                    throw new ProtocolIssue();
                 }
+                int start = offset + (int) varint[1];
+                if (buffer.length - start < length) {
+                    expectedLength = length;
+                    break;
+                }
+                frame(Arrays.copyOfRange(buffer, start, start + length));
+                offset = start + length;
+                expectedLength = 0;
             }
         } catch (Throwable throwable) {
             LogUtils.error(TAG, throwable);
             throw throwable;
         }
 
+        isDone = offset == buffer.length;
+        temp = new ByteArrayOutputStream();
+        temp.write(buffer, offset, buffer.length - offset);
+    }
+
+    private void frame(@NonNull byte[] tokenData) {
+        int read = tokenData.length;
+        // expected to be for a token
+        if (read > 0 && tokenData[0] == '/' && tokenData[read - 1] == '\n') {
+            String token = new String(tokenData, Charsets.UTF_8);
+            token = token.substring(0, read - 1);
+            tokens.add(token);
+        } else if (read > 2 && tokenData[0] == 'n' && tokenData[1] == 'a' && tokenData[read - 1] == '\n') {
+            tokens.add(IPFS.NA);
+        } else if (read > 2 && tokenData[0] == 'l' && tokenData[1] == 's' && tokenData[read - 1] == '\n') {
+            tokens.add(IPFS.LS);
+        } else {
+            message = tokenData;
+            messages.add(tokenData);
+        }
     }
 
     public void clear() {
         isDone = false;
         expectedLength = 0;
         message = null;
+        messages.clear();
         tokens.clear();
         try {
             temp.close();
@@ -174,15 +184,6 @@ public class DataHandler {
         }
     }
 
-    private void merge(DataHandler dataReader) throws IOException {
-        this.expectedLength = dataReader.expectedLength;
-        this.isDone = dataReader.isDone;
-        this.tokens.addAll(dataReader.tokens);
-        this.message = dataReader.message;
-        this.temp.close();
-        this.temp = dataReader.temp;
-    }
-
     public int expectedBytes() {
         return expectedLength;
 
@@ -28,6 +28,11 @@ public class Exchange implements Interface {
     }
 
 
+    @Override
+    public void purge() {
+        // nothing to do here
+    }
+
     @Override
     public void reset() {
         // nothing to do here
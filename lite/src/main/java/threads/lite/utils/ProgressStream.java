@@ -88,4 +88,8 @@ public class ProgressStream extends InputStream {
         return data != null;
     }
 
+    @Override
+    public void close() {
+        mReader.close();
+    }
 }
@@ -4,6 +4,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import threads.lite.bitswap.Interface;
 import threads.lite.cid.Cid;
@@ -18,22 +19,30 @@ public class Reader {
 
     private final DagReader dagReader;
     private final Closeable closeable;
+    private final Interface exchange;
+    private final AtomicBoolean closed;
 
 
-    private Reader(@NonNull Closeable closeable, @NonNull DagReader dagReader) {
+    private Reader(@NonNull Closeable closeable, @NonNull DagReader dagReader,
+                   @NonNull Interface exchange, @NonNull AtomicBoolean closed) {
         this.closeable = closeable;
         this.dagReader = dagReader;
+        this.exchange = exchange;
+        this.closed = closed;
     }
 
     public static Reader getReader(@NonNull Closeable closeable, @NonNull BlockStore blockstore,
                                    @NonNull Interface exchange, @NonNull Cid cid) throws ClosedException {
+        // the requests of the reader end with the closeable or when the reader is closed
+        AtomicBoolean closed = new AtomicBoolean(false);
+        Closeable reading = () -> closed.get() || closeable.isClosed();
         BlockService blockservice = BlockService.createBlockService(blockstore, exchange);
         DagService dags = DagService.createDagService(blockservice);
-        threads.lite.format.Node top = Resolver.resolveNode(closeable, dags, cid);
+        threads.lite.format.Node top = Resolver.resolveNode(reading, dags, cid);
         Objects.requireNonNull(top);
         DagReader dagReader = DagReader.create(top, dags);
 
-        return new Reader(closeable, dagReader);
+        return new Reader(reading, dagReader, exchange, closed);
     }
 
     public int readNextData(long offset, int size, byte[] data) throws ClosedException {
@@ -74,4 +83,14 @@ public class Reader {
     public long getSize() {
         return this.dagReader.getSize();
     }
+
+    // the reader is not used any more, blocks which are fetched ahead are dropped
+    // and the outstanding wants of the reader are cancelled
+    public void close() {
+        if (closed.getAndSet(true)) {
+            return;
+        }
+        dagReader.close();
+        exchange.purge();
+    }
 }
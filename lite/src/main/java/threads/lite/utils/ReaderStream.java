@@ -67,5 +67,8 @@ public class ReaderStream extends InputStream {
         return data != null;
     }
 
-
+    @Override
+    public void close() {
+        reader.close();
+    }
 }
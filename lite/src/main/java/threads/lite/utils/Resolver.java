@@ -15,7 +15,6 @@ import threads.lite.core.Closeable;
 import threads.lite.core.ClosedException;
 import threads.lite.dag.BlockService;
 import threads.lite.dag.DagService;
-import threads.lite.data.Storage;
 import threads.lite.format.BlockStore;
 import threads.lite.format.Link;
 import threads.lite.format.Node;
@@ -24,9 +23,8 @@ import threads.lite.format.NodeGetter;
 
 public class Resolver {
 
-    public static Node resolveNode(@NonNull Closeable closeable, @NonNull Storage storage,
+    public static Node resolveNode(@NonNull Closeable closeable, @NonNull BlockStore bs,
                                    @NonNull Interface exchange, @NonNull String path) throws ClosedException {
-        BlockStore bs = BlockStore.createBlockStore(storage);
         BlockService blockservice = BlockService.createBlockService(bs, exchange);
         DagService dags = DagService.createDagService(blockservice);
         return Resolver.resolveNode(closeable, dags, Path.create(path));
@@ -7,7 +7,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
-import threads.lite.bitswap.BitSwap;
+import threads.lite.IPFS;
 import threads.lite.bitswap.Interface;
 import threads.lite.cid.Cid;
 import threads.lite.cid.Multihash;
@@ -19,7 +19,6 @@ import threads.lite.dag.BlockService;
 import threads.lite.dag.DagService;
 import threads.lite.dag.Directory;
 import threads.lite.dag.FSNode;
-import threads.lite.data.Storage;
 import threads.lite.format.BlockStore;
 import threads.lite.format.Link;
 import threads.lite.format.Node;
@@ -29,12 +28,12 @@ import threads.lite.format.ProtoNode;
 public class Stream {
 
 
-    public static Adder getFileAdder(@NonNull Storage storage) {
+    public static Adder getFileAdder(@NonNull BlockStore bs) {
 
-        BlockStore bs = BlockStore.createBlockStore(storage);
         Interface exchange = new Exchange(bs);
         BlockService blockservice = BlockService.createBlockService(bs, exchange);
-        DagService dagService = DagService.createDagService(blockservice);
+        DagService dagService = DagService.createDagService(blockservice,
+                IPFS.IMPORT_BATCH_SIZE);
         Adder fileAdder = Adder.NewAdder(dagService);
 
         Prefix prefix = Node.PrefixForCidVersion(1);
@@ -51,10 +50,9 @@ public class Stream {
 
 
     public static void removeCid(@NonNull Closeable closeable,
-                                 @NonNull Storage storage,
+                                 @NonNull BlockStore bs,
                                  @NonNull Cid cid) throws ClosedException {
 
-        BlockStore bs = BlockStore.createBlockStore(storage);
         Interface exchange = new Exchange(bs);
         BlockService blockservice = BlockService.createBlockService(bs, exchange);
         DagService dags = DagService.createDagService(blockservice);
@@ -72,7 +70,7 @@ public class Stream {
 
     public static boolean isDir(@NonNull Closeable closeable,
                                 @NonNull BlockStore blockstore,
-                                @NonNull BitSwap exchange,
+                                @NonNull Interface exchange,
                                 @NonNull Cid cid) throws ClosedException {
 
 
@@ -85,21 +83,20 @@ public class Stream {
         return dir != null;
     }
 
-    public static Cid createEmptyDir(@NonNull Storage storage) {
+    public static Cid createEmptyDir(@NonNull BlockStore bs) {
 
-        Adder fileAdder = getFileAdder(storage);
+        Adder fileAdder = getFileAdder(bs);
 
         Node nd = fileAdder.CreateEmptyDir();
         return nd.getCid();
     }
 
 
-    public static Cid addLinkToDir(@NonNull Storage storage, @NonNull Closeable closeable,
+    public static Cid addLinkToDir(@NonNull BlockStore bs, @NonNull Closeable closeable,
                                    @NonNull Cid dir, @NonNull String name, @NonNull Cid link) throws ClosedException {
 
-        Adder fileAdder = getFileAdder(storage);
+        Adder fileAdder = getFileAdder(bs);
 
-        BlockStore bs = BlockStore.createBlockStore(storage);
         Interface exchange = new Exchange(bs);
         BlockService blockservice = BlockService.createBlockService(bs, exchange);
         DagService dagService = DagService.createDagService(blockservice);
@@ -113,12 +110,11 @@ public class Stream {
 
     }
 
-    public static Cid removeLinkFromDir(@NonNull Storage storage, @NonNull Closeable closeable,
+    public static Cid removeLinkFromDir(@NonNull BlockStore bs, @NonNull Closeable closeable,
                                         @NonNull Cid dir, @NonNull String name) throws ClosedException {
 
-        Adder fileAdder = getFileAdder(storage);
+        Adder fileAdder = getFileAdder(bs);
 
-        BlockStore bs = BlockStore.createBlockStore(storage);
         Interface exchange = new Exchange(bs);
         BlockService blockservice = BlockService.createBlockService(bs, exchange);
         DagService dagService = DagService.createDagService(blockservice);
@@ -152,9 +148,9 @@ public class Stream {
 
 
     @NonNull
-    public static Cid write(@NonNull Storage storage, @NonNull WriterStream writerStream) {
+    public static Cid write(@NonNull BlockStore bs, @NonNull WriterStream writerStream) {
 
-        Adder fileAdder = getFileAdder(storage);
+        Adder fileAdder = getFileAdder(bs);
         Node node = fileAdder.AddReader(writerStream);
         return node.getCid();
     }
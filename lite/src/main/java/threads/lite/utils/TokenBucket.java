@@ -0,0 +1,83 @@
+package threads.lite.utils;
+
+import androidx.annotation.NonNull;
+
+import threads.lite.IPFS;
+import threads.lite.core.Closeable;
+import threads.lite.core.ClosedException;
+
+// Limits a data rate (bytes per second), the bucket holds at most one second of
+// tokens (the burst). A rate of 0 disables the limit.
+//
+// An amount larger than the bucket is taken when the bucket is full and leaves a
+// debt, so large blocks are not blocked forever but still limited on average.
+public class TokenBucket {
+
+    private long rate;
+    private double tokens;
+    private long updated = System.nanoTime();
+
+    public TokenBucket(long rate) {
+        this.rate = rate;
+        this.tokens = rate;
+    }
+
+    public synchronized long getRate() {
+        return rate;
+    }
+
+    public synchronized void setRate(long rate) {
+        refill();
+        this.rate = rate;
+        this.tokens = Math.min(tokens, rate);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (rate > 0) {
+            tokens = Math.min(rate, tokens + (now - updated) * rate / 1.0e9);
+        }
+        updated = now;
+    }
+
+    // takes the tokens when available, otherwise returns the time (ms) to wait
+    public synchronized long take(int amount) {
+        if (rate <= 0) {
+            return 0;
+        }
+        refill();
+        double needed = Math.min(amount, rate);
+        if (tokens >= needed) {
+            tokens -= amount;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((needed - tokens) * 1000 / rate));
+    }
+
+    // gives back tokens which were taken but not used
+    public synchronized void refund(int amount) {
+        if (rate > 0) {
+            refill();
+            tokens = Math.min(rate, tokens + amount);
+        }
+    }
+
+    // waits until the amount of bytes can be sent
+    public void acquire(@NonNull Closeable closeable, int amount) throws ClosedException {
+        while (true) {
+            if (closeable.isClosed()) {
+                throw new ClosedException();
+            }
+            long wait = take(amount);
+            if (wait == 0) {
+                return;
+            }
+            try {
+                Thread.sleep(Math.min(wait, IPFS.WANTS_CLOSE_INTERVAL));
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new ClosedException();
+            }
+        }
+    }
+}
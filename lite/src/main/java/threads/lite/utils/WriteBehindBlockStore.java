@@ -0,0 +1,271 @@
+package threads.lite.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import threads.lite.IPFS;
+import threads.lite.LogUtils;
+import threads.lite.cid.Cid;
+import threads.lite.format.Block;
+import threads.lite.format.BlockStore;
+
+// Blocks given to putBlock are kept in memory and written by a background writer
+// in batches, readers are served from memory until the block is stored.
+//
+// Flush policy: a batch is written when batchSize blocks are pending or when the
+// oldest pending block waited delay ms. A delay of 0 writes the blocks before
+// putBlock returns. When the pending blocks exceed capacity bytes, putBlock
+// blocks until the writer caught up (backpressure).
+//
+// A batch which can not be written stays pending and is written again after a
+// growing delay. After WRITE_BEHIND_RETRIES failures in a row the store fails:
+// putBlock and flush throw until a batch was written again.
+public class WriteBehindBlockStore implements BlockStore {
+    private static final String TAG = WriteBehindBlockStore.class.getSimpleName();
+
+    private final BlockStore blockstore;
+    private final long capacity;
+    private final int batchSize;
+    private final long delay;
+    private final LinkedHashMap<Cid, Block> pending = new LinkedHashMap<>();
+    private final Set<Cid> writing = new HashSet<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private long pendingBytes = 0;
+    private long oldest = 0;
+    private int urgent = 0; // callers waiting for the writer
+    private int failures = 0; // failed writes in a row
+    private Throwable failure = null; // set after WRITE_BEHIND_RETRIES failures
+    private boolean closed = false;
+
+    public WriteBehindBlockStore(@NonNull BlockStore blockstore, long capacity,
+                                 int batchSize, long delay) {
+        this.blockstore = blockstore;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.delay = delay;
+        if (delay > 0) {
+            writer.execute(this::write);
+        }
+    }
+
+    private void write() {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Block> batch = new ArrayList<>();
+            try {
+                synchronized (this) {
+                    while (pending.isEmpty()) {
+                        wait();
+                    }
+                    long timeout = (oldest + delay) - System.currentTimeMillis();
+                    while (pending.size() < batchSize && urgent == 0 && timeout > 0) {
+                        wait(timeout);
+                        timeout = (oldest + delay) - System.currentTimeMillis();
+                    }
+                    Iterator<Block> iterator = pending.values().iterator();
+                    while (iterator.hasNext() && batch.size() < batchSize) {
+                        Block block = iterator.next();
+                        batch.add(block);
+                        writing.add(block.getCid());
+                    }
+                }
+            } catch (InterruptedException interruptedException) {
+                return;
+            }
+
+            Throwable error = null;
+            try {
+                blockstore.putBlocks(batch);
+            } catch (Throwable throwable) {
+                LogUtils.error(TAG, throwable);
+                error = throwable;
+            }
+            try {
+                synchronized (this) {
+                    for (Block block : batch) {
+                        writing.remove(block.getCid());
+                    }
+                    if (error == null) {
+                        // the blocks are visible in the pending map until they are stored
+                        for (Block block : batch) {
+                            if (pending.remove(block.getCid()) != null) {
+                                pendingBytes -= block.getRawData().length;
+                            }
+                        }
+                        failures = 0;
+                        failure = null;
+                        oldest = System.currentTimeMillis();
+                        notifyAll();
+                    } else {
+                        // the blocks stay pending and are written again later
+                        failures++;
+                        if (failures >= IPFS.WRITE_BEHIND_RETRIES) {
+                            failure = error;
+                        }
+                        notifyAll();
+                        long backoff = Math.min(IPFS.WRITE_BEHIND_RETRY_MAX,
+                                IPFS.WRITE_BEHIND_RETRY_DELAY << Math.min(failures, 16));
+                        long until = System.currentTimeMillis() + backoff;
+                        long timeout = backoff;
+                        while (timeout > 0) {
+                            wait(timeout);
+                            timeout = until - System.currentTimeMillis();
+                        }
+                    }
+                }
+            } catch (InterruptedException interruptedException) {
+                return;
+            }
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private synchronized Block lookup(@NonNull Cid cid) {
+        return pending.get(cid);
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new RuntimeException("blocks can not be stored", failure);
+        }
+    }
+
+    // blocks until all pending blocks are stored, fails when the writer failed
+    public synchronized void flush() throws InterruptedException {
+        urgent++;
+        try {
+            while (!pending.isEmpty()) {
+                checkFailure();
+                notifyAll();
+                wait();
+            }
+        } finally {
+            urgent--;
+        }
+    }
+
+    // stores the pending blocks and stops the writer, later blocks are written
+    // directly
+    public void shutdown() throws InterruptedException {
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                closed = true;
+            }
+            writer.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean hasBlock(@NonNull Cid cid) {
+        if (lookup(cid) != null) {
+            return true;
+        }
+        return blockstore.hasBlock(cid);
+    }
+
+    @Override
+    public Block getBlock(@NonNull Cid cid) {
+        Block block = lookup(cid);
+        if (block != null) {
+            return block;
+        }
+        return blockstore.getBlock(cid);
+    }
+
+    private synchronized void remove(@NonNull Cid cid) throws InterruptedException {
+        // a block which is currently written has to be stored first, otherwise
+        // it would be written again after it was deleted
+        while (writing.contains(cid)) {
+            wait();
+        }
+        Block block = pending.remove(cid);
+        if (block != null) {
+            pendingBytes -= block.getRawData().length;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void deleteBlock(@NonNull Cid cid) {
+        try {
+            remove(cid);
+        } catch (InterruptedException interruptedException) {
+            throw new RuntimeException(interruptedException);
+        }
+        blockstore.deleteBlock(cid);
+    }
+
+    @Override
+    public void deleteBlocks(@NonNull List<Cid> cids) {
+        try {
+            for (Cid cid : cids) {
+                remove(cid);
+            }
+        } catch (InterruptedException interruptedException) {
+            throw new RuntimeException(interruptedException);
+        }
+        blockstore.deleteBlocks(cids);
+    }
+
+    @Override
+    public void putBlock(@NonNull Block block) {
+        synchronized (this) {
+            checkFailure();
+        }
+        if (delay <= 0 || isClosed()) {
+            blockstore.putBlock(block);
+            return;
+        }
+        int length = block.getRawData().length;
+        synchronized (this) {
+            if (pending.containsKey(block.getCid())) {
+                return;
+            }
+            urgent++;
+            try {
+                while (pendingBytes > 0 && pendingBytes + length > capacity) {
+                    checkFailure();
+                    notifyAll();
+                    wait();
+                }
+            } catch (InterruptedException interruptedException) {
+                throw new RuntimeException(interruptedException);
+            } finally {
+                urgent--;
+            }
+            if (pending.isEmpty()) {
+                oldest = System.currentTimeMillis();
+            }
+            pending.put(block.getCid(), block);
+            pendingBytes += length;
+            notifyAll();
+        }
+    }
+
+    // a batch is already grouped by the caller and is written directly
+    @Override
+    public void putBlocks(@NonNull List<Block> blocks) {
+        blockstore.putBlocks(blocks);
+    }
+
+    @Override
+    public int getSize(@NonNull Cid cid) {
+        Block block = lookup(cid);
+        if (block != null) {
+            return block.getRawData().length;
+        }
+        return blockstore.getSize(cid);
+    }
+}